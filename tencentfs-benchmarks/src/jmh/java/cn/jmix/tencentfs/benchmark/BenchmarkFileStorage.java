@@ -0,0 +1,19 @@
+package cn.jmix.tencentfs.benchmark;
+
+import cn.jmix.tencentfs.TencentFileStorage;
+
+/**
+ * Storage connected to a {@link CosStubServer} outside of a Spring context.
+ */
+public class BenchmarkFileStorage extends TencentFileStorage {
+
+    public BenchmarkFileStorage(CosStubServer server, int chunkSize) {
+        super("benchmark", "id", "key", "bucket", "ap-benchmark", chunkSize, server.getEndpointUrl());
+    }
+
+    @Override
+    protected String createDateDir() {
+        // there is no TimeSource without a Spring context
+        return "benchmark";
+    }
+}
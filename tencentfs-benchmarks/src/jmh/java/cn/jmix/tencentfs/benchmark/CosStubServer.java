@@ -0,0 +1,222 @@
+package cn.jmix.tencentfs.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * In-process HTTP server that implements the subset of the COS API used by the storage: simple and multipart
+ * uploads, plain and ranged downloads, HEAD and DELETE. Objects are kept in memory and requests are not
+ * authenticated. The storage reaches it through a complete endpoint URL, see {@link #getEndpointUrl()}.
+ */
+public class CosStubServer implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    private final Map<String, String> etags = new ConcurrentHashMap<>();
+    private final Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+
+    public CosStubServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("cos-stub-");
+        threadFactory.setDaemon(true);
+        executor = Executors.newCachedThreadPool(threadFactory);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    public String getEndpointUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    public void clear() {
+        objects.clear();
+        etags.clear();
+        uploads.clear();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String key = URLDecoder.decode(exchange.getRequestURI().getRawPath().substring(1), "UTF-8");
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            switch (exchange.getRequestMethod()) {
+                case "PUT":
+                    put(exchange, key, query);
+                    break;
+                case "POST":
+                    post(exchange, key, query);
+                    break;
+                case "GET":
+                    get(exchange, key, true);
+                    break;
+                case "HEAD":
+                    get(exchange, key, false);
+                    break;
+                case "DELETE":
+                    delete(exchange, key, query);
+                    break;
+                default:
+                    sendError(exchange, 405, "MethodNotAllowed");
+            }
+        } catch (RuntimeException e) {
+            sendError(exchange, 500, "InternalError");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void put(HttpExchange exchange, String key, Map<String, String> query) throws IOException {
+        byte[] data = IOUtils.toByteArray(exchange.getRequestBody());
+        String uploadId = query.get("uploadId");
+        if (uploadId != null) {
+            Map<Integer, byte[]> parts = uploads.get(uploadId);
+            if (parts == null) {
+                sendError(exchange, 404, "NoSuchUpload");
+                return;
+            }
+            parts.put(Integer.parseInt(query.get("partNumber")), data);
+        } else {
+            objects.put(key, data);
+            etags.put(key, md5(data));
+        }
+        // the SDK compares the ETag with the MD5 of the sent content
+        exchange.getResponseHeaders().set("ETag", md5(data));
+        exchange.sendResponseHeaders(200, -1);
+    }
+
+    private void post(HttpExchange exchange, String key, Map<String, String> query) throws IOException {
+        IOUtils.toByteArray(exchange.getRequestBody());
+        if (query.containsKey("uploads")) {
+            String uploadId = UUID.randomUUID().toString();
+            uploads.put(uploadId, new ConcurrentSkipListMap<>());
+            sendXml(exchange, "<InitiateMultipartUploadResult><Bucket>bucket</Bucket><Key>" + key
+                    + "</Key><UploadId>" + uploadId + "</UploadId></InitiateMultipartUploadResult>");
+            return;
+        }
+        Map<Integer, byte[]> parts = uploads.remove(query.get("uploadId"));
+        if (parts == null) {
+            sendError(exchange, 404, "NoSuchUpload");
+            return;
+        }
+        // the stub trusts the part list of the request and joins all stored parts in order
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        for (byte[] part : parts.values()) {
+            content.write(part, 0, part.length);
+        }
+        String etag = "\"" + UUID.randomUUID() + "-" + parts.size() + "\"";
+        objects.put(key, content.toByteArray());
+        etags.put(key, etag);
+        sendXml(exchange, "<CompleteMultipartUploadResult><Location>" + key + "</Location><Bucket>bucket</Bucket><Key>"
+                + key + "</Key><ETag>" + etag + "</ETag></CompleteMultipartUploadResult>");
+    }
+
+    private void get(HttpExchange exchange, String key, boolean sendContent) throws IOException {
+        byte[] data = objects.get(key);
+        if (data == null) {
+            sendError(exchange, 404, "NoSuchKey");
+            return;
+        }
+        int start = 0;
+        int end = data.length - 1;
+        int status = 200;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range != null && range.startsWith("bytes=")) {
+            String[] bounds = range.substring("bytes=".length()).split("-");
+            start = Integer.parseInt(bounds[0]);
+            if (bounds.length > 1 && !bounds[1].isEmpty()) {
+                end = Math.min(end, Integer.parseInt(bounds[1]));
+            }
+            status = 206;
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + data.length);
+        }
+        int length = end - start + 1;
+        exchange.getResponseHeaders().set("ETag", etags.get(key));
+        exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+        if (!sendContent) {
+            exchange.getResponseHeaders().set("Content-Length", String.valueOf(length));
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(data, start, length);
+        }
+    }
+
+    private void delete(HttpExchange exchange, String key, Map<String, String> query) throws IOException {
+        String uploadId = query.get("uploadId");
+        if (uploadId != null) {
+            uploads.remove(uploadId);
+        } else {
+            objects.remove(key);
+            etags.remove(key);
+        }
+        exchange.sendResponseHeaders(204, -1);
+    }
+
+    private void sendXml(HttpExchange exchange, String xml) throws IOException {
+        byte[] body = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + xml).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/xml");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private void sendError(HttpExchange exchange, int status, String code) throws IOException {
+        byte[] body = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?><Error><Code>" + code + "</Code><Message>" + code
+                + "</Message></Error>").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/xml");
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) throws IOException {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String parameter : rawQuery.split("&")) {
+            int separator = parameter.indexOf('=');
+            String name = separator < 0 ? parameter : parameter.substring(0, separator);
+            String value = separator < 0 ? "" : URLDecoder.decode(parameter.substring(separator + 1), "UTF-8");
+            query.put(name, value);
+        }
+        return query;
+    }
+
+    private static String md5(byte[] data) {
+        return "\"" + DigestUtils.md5Hex(data) + "\"";
+    }
+}
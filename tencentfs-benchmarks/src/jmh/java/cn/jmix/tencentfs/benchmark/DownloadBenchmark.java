@@ -0,0 +1,86 @@
+package cn.jmix.tencentfs.benchmark;
+
+import io.jmix.core.FileRef;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@code openStream} and reading the whole content from the local COS stub, with a single GET request
+ * or with parallel ranged requests.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DownloadBenchmark {
+
+    /**
+     * File size in kB.
+     */
+    @Param({"64", "16384", "65536"})
+    public int fileSize;
+
+    /**
+     * Threshold of ranged downloads in kB, 0 for a single GET request.
+     */
+    @Param({"0", "1024"})
+    public int downloadRangeThreshold;
+
+    @Param({"1024", "8192"})
+    public int downloadRangeSize;
+
+    private CosStubServer server;
+    private BenchmarkFileStorage storage;
+    private FileRef fileRef;
+
+    @State(Scope.Thread)
+    public static class ReadBuffer {
+        final byte[] buffer = new byte[64 * 1024];
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        server = new CosStubServer();
+        storage = new BenchmarkFileStorage(server, 8192);
+        storage.setDownloadRangeThreshold(downloadRangeThreshold);
+        storage.setDownloadRangeSize(downloadRangeSize);
+        // existence checks of ranged downloads are not part of the measured transfer
+        storage.setMetadataCacheTtl(3600);
+        storage.refreshOssClient();
+        byte[] content = new byte[fileSize * 1024];
+        new Random(42).nextBytes(content);
+        fileRef = storage.saveStream("file.bin", new ByteArrayInputStream(content));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        storage.shutdown();
+        server.close();
+    }
+
+    @Benchmark
+    public long openStream(ReadBuffer readBuffer) throws IOException {
+        return read(readBuffer.buffer);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public long openStreamConcurrently(ReadBuffer readBuffer) throws IOException {
+        return read(readBuffer.buffer);
+    }
+
+    private long read(byte[] buffer) throws IOException {
+        long total = 0;
+        try (InputStream inputStream = storage.openStream(fileRef)) {
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                total += read;
+            }
+        }
+        return total;
+    }
+}
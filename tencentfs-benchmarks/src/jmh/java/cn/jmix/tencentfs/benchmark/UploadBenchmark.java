@@ -0,0 +1,79 @@
+package cn.jmix.tencentfs.benchmark;
+
+import io.jmix.core.FileRef;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@code saveStream} against the local COS stub for several file sizes, part sizes and part parallelism
+ * levels. {@link #saveStream} uploads one file at a time, {@link #saveStreamConcurrently} runs eight uploads
+ * at the same time that share the upload executor of the storage. Comparing the runs with and without
+ * {@link #adaptivePartSize} shows the effect of the adaptive part sizing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class UploadBenchmark {
+
+    /**
+     * File size in kB.
+     */
+    @Param({"64", "16384", "65536"})
+    public int fileSize;
+
+    /**
+     * Part size in kB.
+     */
+    @Param({"1024", "8192"})
+    public int chunkSize;
+
+    @Param({"1", "5"})
+    public int uploadParallelism;
+
+    /**
+     * Whether part size and parallelism are chosen per upload, the static settings above are then the defaults.
+     */
+    @Param({"false", "true"})
+    public boolean adaptivePartSize;
+
+    private CosStubServer server;
+    private BenchmarkFileStorage storage;
+    private byte[] content;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        server = new CosStubServer();
+        storage = new BenchmarkFileStorage(server, chunkSize);
+        storage.setUploadParallelism(uploadParallelism);
+        storage.setAdaptivePartSize(adaptivePartSize);
+        storage.refreshOssClient();
+        content = new byte[fileSize * 1024];
+        new Random(42).nextBytes(content);
+    }
+
+    @Setup(Level.Iteration)
+    public void clearObjects() {
+        server.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        storage.shutdown();
+        server.close();
+    }
+
+    @Benchmark
+    public FileRef saveStream() {
+        return storage.saveStream("file.bin", new ByteArrayInputStream(content));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public FileRef saveStreamConcurrently() {
+        return storage.saveStream("file.bin", new ByteArrayInputStream(content));
+    }
+}
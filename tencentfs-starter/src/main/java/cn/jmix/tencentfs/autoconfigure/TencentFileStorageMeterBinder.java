@@ -0,0 +1,23 @@
+package cn.jmix.tencentfs.autoconfigure;
+
+import cn.jmix.tencentfs.TencentFileStorage;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+
+/**
+ * Binds the metrics of every {@link TencentFileStorage} bean to the meter registries of the application.
+ */
+public class TencentFileStorageMeterBinder implements MeterBinder {
+
+    private final ObjectProvider<TencentFileStorage> fileStorages;
+
+    public TencentFileStorageMeterBinder(ObjectProvider<TencentFileStorage> fileStorages) {
+        this.fileStorages = fileStorages;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        fileStorages.orderedStream().forEach(fileStorage -> fileStorage.bindMetrics(registry));
+    }
+}
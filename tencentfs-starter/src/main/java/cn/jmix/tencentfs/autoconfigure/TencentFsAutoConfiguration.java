@@ -1,11 +1,18 @@
 package cn.jmix.tencentfs.autoconfigure;
 
+import cn.jmix.tencentfs.TencentFileStorage;
 import cn.jmix.tencentfs.TencentFileStorageConfiguration;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
 
 @Configuration
 @Import({TencentFileStorageConfiguration.class})
 public class TencentFsAutoConfiguration {
-}
 
+    @Bean("tencentfs_FileStorageMeterBinder")
+    public TencentFileStorageMeterBinder fileStorageMeterBinder(ObjectProvider<TencentFileStorage> fileStorages) {
+        return new TencentFileStorageMeterBinder(fileStorages);
+    }
+}
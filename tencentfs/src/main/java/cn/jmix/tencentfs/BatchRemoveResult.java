@@ -0,0 +1,35 @@
+package cn.jmix.tencentfs;
+
+import io.jmix.core.FileRef;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Outcome of {@link TencentFileStorage#removeFiles(Collection)}: the removed files and the reasons of the failed ones.
+ */
+public class BatchRemoveResult {
+
+    protected final List<FileRef> removed = Collections.synchronizedList(new ArrayList<>());
+    protected final Map<FileRef, String> failures = new ConcurrentHashMap<>();
+
+    public List<FileRef> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * Files that could not be removed with the error reported for each of them.
+     */
+    public Map<FileRef, String> getFailures() {
+        return failures;
+    }
+
+    public boolean isSuccessful() {
+        return failures.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "removed=" + removed.size() + ", failed=" + failures.size();
+    }
+}
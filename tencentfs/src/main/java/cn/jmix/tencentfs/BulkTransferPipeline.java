@@ -0,0 +1,96 @@
+package cn.jmix.tencentfs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Runs an operation for each input of an iterator with at most {@code window} operations in flight and passes
+ * their results to a consumer in the order they complete. Inputs are taken from the iterator only when a slot
+ * of the window is free, and the consumer runs on the calling thread, so memory use does not depend on the number
+ * of inputs and the consumer does not need to be thread-safe.
+ * <p>
+ * If the consumer throws or the calling thread is interrupted, no more inputs are taken; results that are
+ * not passed to the consumer are closed if they are {@link AutoCloseable}.
+ */
+class BulkTransferPipeline<T, R> {
+
+    private static final Logger log = LoggerFactory.getLogger(BulkTransferPipeline.class);
+
+    private final int window;
+    private final Function<T, CompletableFuture<R>> operation;
+    private final BlockingQueue<BulkTransferResult<T, R>> completed = new LinkedBlockingQueue<>();
+    private final AtomicBoolean abandoned = new AtomicBoolean();
+
+    BulkTransferPipeline(int window, Function<T, CompletableFuture<R>> operation) {
+        this.window = Math.max(1, window);
+        this.operation = operation;
+    }
+
+    void run(Iterator<? extends T> inputs, Consumer<? super BulkTransferResult<T, R>> consumer) throws InterruptedException {
+        int inFlight = 0;
+        boolean finished = false;
+        try {
+            while (true) {
+                while (inFlight < window && inputs.hasNext()) {
+                    submit(inputs.next());
+                    inFlight++;
+                }
+                if (inFlight == 0) {
+                    break;
+                }
+                BulkTransferResult<T, R> result = completed.take();
+                inFlight--;
+                consumer.accept(result);
+            }
+            finished = true;
+        } finally {
+            if (!finished) {
+                abandoned.set(true);
+                closeCompleted();
+            }
+        }
+    }
+
+    private void submit(T input) {
+        CompletableFuture<R> future;
+        try {
+            future = operation.apply(input);
+        } catch (RuntimeException e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        future.whenComplete((value, error) -> {
+            completed.add(new BulkTransferResult<>(input, value, unwrap(error)));
+            // results completed after the pipeline stopped are not taken by the consumer
+            if (abandoned.get()) {
+                closeCompleted();
+            }
+        });
+    }
+
+    private void closeCompleted() {
+        BulkTransferResult<T, R> result;
+        while ((result = completed.poll()) != null) {
+            if (result.getValue() instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable) result.getValue()).close();
+                } catch (Exception e) {
+                    log.debug("Cannot close the result of {}", result.getInput(), e);
+                }
+            }
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+}
@@ -0,0 +1,52 @@
+package cn.jmix.tencentfs;
+
+import javax.annotation.Nullable;
+
+/**
+ * Outcome of a single file of a bulk transfer, see {@link TencentFileStorage#saveStreams}
+ * and {@link TencentFileStorage#openStreams}.
+ *
+ * @param <T> type of the inputs of the transfer
+ * @param <R> type of the result of a transferred file
+ */
+public class BulkTransferResult<T, R> {
+
+    protected final T input;
+    protected final R value;
+    protected final Throwable error;
+
+    public BulkTransferResult(T input, @Nullable R value, @Nullable Throwable error) {
+        this.input = input;
+        this.value = value;
+        this.error = error;
+    }
+
+    public T getInput() {
+        return input;
+    }
+
+    /**
+     * Result of the transfer, {@code null} if it failed.
+     */
+    @Nullable
+    public R getValue() {
+        return value;
+    }
+
+    /**
+     * Cause of the failure, {@code null} if the transfer succeeded.
+     */
+    @Nullable
+    public Throwable getError() {
+        return error;
+    }
+
+    public boolean isSuccessful() {
+        return error == null;
+    }
+
+    @Override
+    public String toString() {
+        return input + (error == null ? " -> " + value : " failed: " + error);
+    }
+}
@@ -0,0 +1,78 @@
+package cn.jmix.tencentfs;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Computes the CRC64 of an object while it is read and compares it with the checksum reported by COS
+ * at the end of the stream. Skipping disables the check, since the skipped bytes are not read.
+ */
+class ChecksumVerifyingInputStream extends FilterInputStream {
+
+    private final String key;
+    private final String expected;
+    private final TencentStorageStatistics statistics;
+    private final Crc64 checksum = new Crc64();
+    private boolean verifying = true;
+
+    ChecksumVerifyingInputStream(InputStream in, String key, String expected, TencentStorageStatistics statistics) {
+        super(in);
+        this.key = key;
+        this.expected = expected;
+        this.statistics = statistics;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+            checksum.update(b);
+        } else {
+            verify();
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) {
+            checksum.update(b, off, n);
+        } else if (n < 0) {
+            verify();
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        verifying = false;
+        return super.skip(n);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    private void verify() throws IOException {
+        if (!verifying) {
+            return;
+        }
+        verifying = false;
+        if (!Crc64.matches(checksum.getValue(), expected)) {
+            statistics.checksumMismatches.increment();
+            throw new IOException(String.format("CRC64 of %s does not match the checksum reported by COS", key));
+        }
+    }
+}
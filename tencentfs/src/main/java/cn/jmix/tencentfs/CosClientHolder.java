@@ -0,0 +1,99 @@
+package cn.jmix.tencentfs;
+
+import com.qcloud.cos.COSClient;
+import com.qcloud.cos.region.Region;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * COS client together with the bucket it works with. Operations lease the holder for their duration,
+ * so a client replaced by {@link TencentFileStorage#refreshOssClient()} is shut down only after the
+ * requests in flight finish.
+ */
+class CosClientHolder {
+
+    private final COSClient client;
+    private final String bucket;
+    // one lease belongs to the storage until the holder is retired
+    private final AtomicInteger leases = new AtomicInteger(1);
+    private final AtomicBoolean shutdown = new AtomicBoolean();
+
+    CosClientHolder(COSClient client, String bucket) {
+        this.client = client;
+        this.bucket = bucket;
+    }
+
+    COSClient getClient() {
+        return client;
+    }
+
+    String getBucket() {
+        return bucket;
+    }
+
+    Region getRegion() {
+        return client.getClientConfig().getRegion();
+    }
+
+    /**
+     * Takes a lease, returns {@code false} if the holder is retired and all its leases are released.
+     */
+    boolean acquire() {
+        while (true) {
+            int count = leases.get();
+            if (count <= 0) {
+                return false;
+            }
+            if (leases.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    void release() {
+        if (leases.decrementAndGet() == 0) {
+            shutdownClient();
+        }
+    }
+
+    /**
+     * Drops the lease of the storage. The client is shut down when the last operation releases its lease.
+     */
+    void retire() {
+        release();
+    }
+
+    void shutdownClient() {
+        if (shutdown.compareAndSet(false, true)) {
+            client.shutdown();
+        }
+    }
+
+    boolean isShutdown() {
+        return shutdown.get();
+    }
+
+    /**
+     * Wraps a stream that reads a response of the client, the lease is released when the stream is closed.
+     */
+    InputStream releaseOnClose(InputStream inputStream) {
+        return new FilterInputStream(inputStream) {
+            private final AtomicBoolean closed = new AtomicBoolean();
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    if (closed.compareAndSet(false, true)) {
+                        release();
+                    }
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,196 @@
+package cn.jmix.tencentfs;
+
+import javax.annotation.Nullable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.Checksum;
+
+/**
+ * CRC-64 with the ECMA-182 polynomial in the reflected form that COS reports in the
+ * {@code x-cos-hash-crc64ecma} header (CRC-64/XZ). The checksum of an object assembled from parts
+ * is obtained from the checksums of the parts with {@link #combine(long, long, long)}.
+ */
+public final class Crc64 implements Checksum {
+
+    private static final long POLY = 0xC96C5795D7870F42L;
+
+    // slicing-by-8 tables, TABLE[k][n] is the CRC of byte n followed by k zero bytes
+    private static final long[][] TABLE = new long[8][256];
+
+    static {
+        for (int n = 0; n < 256; n++) {
+            long crc = n;
+            for (int k = 0; k < 8; k++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLY : crc >>> 1;
+            }
+            TABLE[0][n] = crc;
+        }
+        for (int n = 0; n < 256; n++) {
+            long crc = TABLE[0][n];
+            for (int k = 1; k < 8; k++) {
+                crc = TABLE[0][(int) crc & 0xff] ^ (crc >>> 8);
+                TABLE[k][n] = crc;
+            }
+        }
+    }
+
+    private long crc = -1L;
+
+    @Override
+    public void update(int b) {
+        crc = TABLE[0][(int) (crc ^ b) & 0xff] ^ (crc >>> 8);
+    }
+
+    public void update(byte[] b) {
+        update(b, 0, b.length);
+    }
+
+    @Override
+    public void update(byte[] b, int off, int len) {
+        long[] t0 = TABLE[0], t1 = TABLE[1], t2 = TABLE[2], t3 = TABLE[3];
+        long[] t4 = TABLE[4], t5 = TABLE[5], t6 = TABLE[6], t7 = TABLE[7];
+        long c = crc;
+        while (len >= 8) {
+            c ^= (b[off] & 0xffL)
+                    | (b[off + 1] & 0xffL) << 8
+                    | (b[off + 2] & 0xffL) << 16
+                    | (b[off + 3] & 0xffL) << 24
+                    | (b[off + 4] & 0xffL) << 32
+                    | (b[off + 5] & 0xffL) << 40
+                    | (b[off + 6] & 0xffL) << 48
+                    | (b[off + 7] & 0xffL) << 56;
+            c = t7[(int) c & 0xff]
+                    ^ t6[(int) (c >>> 8) & 0xff]
+                    ^ t5[(int) (c >>> 16) & 0xff]
+                    ^ t4[(int) (c >>> 24) & 0xff]
+                    ^ t3[(int) (c >>> 32) & 0xff]
+                    ^ t2[(int) (c >>> 40) & 0xff]
+                    ^ t1[(int) (c >>> 48) & 0xff]
+                    ^ t0[(int) (c >>> 56)];
+            off += 8;
+            len -= 8;
+        }
+        while (len-- > 0) {
+            c = t0[(int) (c ^ b[off++]) & 0xff] ^ (c >>> 8);
+        }
+        crc = c;
+    }
+
+    @Override
+    public long getValue() {
+        return ~crc;
+    }
+
+    @Override
+    public void reset() {
+        crc = -1L;
+    }
+
+    /**
+     * Returns the checksum of the concatenation of two blocks from their checksums and the length
+     * of the second one, in {@code O(log len2)} steps.
+     */
+    public static long combine(long crc1, long crc2, long len2) {
+        if (len2 <= 0) {
+            return crc1;
+        }
+        // operators that append one zero bit (odd) and then 2, 4, 8... zero bits to a CRC
+        long[] even = new long[64];
+        long[] odd = new long[64];
+        odd[0] = POLY;
+        long row = 1;
+        for (int n = 1; n < 64; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+        square(even, odd);
+        square(odd, even);
+        do {
+            square(even, odd);
+            if ((len2 & 1) != 0) {
+                crc1 = times(even, crc1);
+            }
+            len2 >>= 1;
+            if (len2 == 0) {
+                break;
+            }
+            square(odd, even);
+            if ((len2 & 1) != 0) {
+                crc1 = times(odd, crc1);
+            }
+            len2 >>= 1;
+        } while (len2 != 0);
+        return crc1 ^ crc2;
+    }
+
+    /**
+     * Compares a checksum with the one reported by COS as an unsigned decimal number.
+     * Returns {@code true} if COS did not report a checksum, callers check {@link #isReported(String)}
+     * first to count the transfers that cannot be verified.
+     */
+    static boolean matches(long expected, @Nullable String reported) {
+        if (!isReported(reported)) {
+            return true;
+        }
+        return Long.parseUnsignedLong(reported.trim()) == expected;
+    }
+
+    /**
+     * Returns the checksum of {@code length} bytes of the file starting at {@code offset}.
+     */
+    static long ofFile(Path file, long offset, long length) throws IOException {
+        Crc64 checksum = new Crc64();
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(length, 64 * 1024));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long position = offset;
+            long remaining = length;
+            while (remaining > 0) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), remaining));
+                int count = channel.read(buffer, position);
+                if (count < 0) {
+                    throw new EOFException("File " + file + " is shorter than " + (offset + length) + " bytes");
+                }
+                checksum.update(buffer.array(), 0, count);
+                position += count;
+                remaining -= count;
+            }
+        }
+        return checksum.getValue();
+    }
+
+    /**
+     * Whether COS reported a checksum that can be compared, an unsigned decimal number.
+     */
+    static boolean isReported(@Nullable String reported) {
+        if (reported == null || reported.trim().isEmpty()) {
+            return false;
+        }
+        try {
+            Long.parseUnsignedLong(reported.trim());
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static long times(long[] matrix, long vector) {
+        long sum = 0;
+        for (int i = 0; vector != 0; i++, vector >>>= 1) {
+            if ((vector & 1) != 0) {
+                sum ^= matrix[i];
+            }
+        }
+        return sum;
+    }
+
+    private static void square(long[] square, long[] matrix) {
+        for (int n = 0; n < 64; n++) {
+            square[n] = times(matrix, matrix[n]);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package cn.jmix.tencentfs;
+
+import io.jmix.core.FileStorageException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Read-through cache of object content on the local disk with least-recently-used eviction bounded by the total
+ * size of the cached files. Concurrent reads of a key that is not cached yet wait for a single download.
+ */
+class LocalFileCache {
+
+    private static final Logger log = LoggerFactory.getLogger(LocalFileCache.class);
+
+    // names of cached files and of the temporary files of downloads, see getFile(String)
+    private static final Pattern CACHE_FILE_NAME =
+            Pattern.compile("[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}(\\d+\\.tmp)?");
+
+    private final Path directory;
+    private final long maxSize;
+    private final TencentStorageStatistics statistics;
+
+    // guarded by itself, iterates from the least recently used entry
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+
+    private final Map<String, CompletableFuture<Path>> loads = new ConcurrentHashMap<>();
+
+    LocalFileCache(Path directory, long maxSize, TencentStorageStatistics statistics) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.statistics = statistics;
+        clearDirectory();
+    }
+
+    /**
+     * Returns the cached content of the key, downloading it with the loader if it is not cached.
+     */
+    InputStream openStream(String key, Supplier<InputStream> loader) {
+        Path file = getFile(key);
+        synchronized (entries) {
+            if (entries.get(key) != null) {
+                statistics.cacheHits.increment();
+                try {
+                    return openFile(file);
+                } catch (IOException e) {
+                    log.warn("Cannot read cached file of {}, loading it again", key, e);
+                    removeEntry(key);
+                }
+            }
+        }
+        statistics.cacheMisses.increment();
+
+        CompletableFuture<Path> load = new CompletableFuture<>();
+        CompletableFuture<Path> existingLoad = loads.putIfAbsent(key, load);
+        Path loadedFile;
+        if (existingLoad == null) {
+            try {
+                loadedFile = load(key, file, loader, load);
+                load.complete(loadedFile);
+            } catch (RuntimeException e) {
+                load.completeExceptionally(e);
+                throw e;
+            } finally {
+                loads.remove(key, load);
+            }
+        } else {
+            try {
+                loadedFile = existingLoad.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, "Loading " + key + " interrupted", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof FileStorageException) {
+                    throw (FileStorageException) e.getCause();
+                }
+                throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, "Cannot load " + key, e.getCause());
+            }
+            if (!loadedFile.equals(file)) {
+                // the file of the other reader is not cached and belongs to it
+                return loader.get();
+            }
+        }
+        try {
+            if (!loadedFile.equals(file)) {
+                // too large to be cached, the temporary file is removed when the stream is closed
+                return Channels.newInputStream(FileChannel.open(loadedFile, StandardOpenOption.READ, StandardOpenOption.DELETE_ON_CLOSE));
+            }
+            // opened under the lock so that the file is not deleted by a concurrent eviction before it is open,
+            // an open file can be read after it is deleted
+            synchronized (entries) {
+                if (entries.containsKey(key)) {
+                    return openFile(file);
+                }
+            }
+        } catch (IOException e) {
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, "Cannot read cached file of " + key, e);
+        }
+        // evicted or invalidated right after it was loaded
+        return loader.get();
+    }
+
+    void invalidate(String key) {
+        synchronized (entries) {
+            // a download in progress is not cached when it completes
+            loads.remove(key);
+            removeEntry(key);
+        }
+    }
+
+    private Path load(String key, Path file, Supplier<InputStream> loader, CompletableFuture<Path> load) {
+        Path tempFile;
+        long fileSize;
+        try {
+            Files.createDirectories(directory);
+            tempFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try (InputStream inputStream = loader.get()) {
+                fileSize = Files.copy(inputStream, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(tempFile);
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, "Cannot cache " + key, e);
+        }
+        if (fileSize > maxSize) {
+            return tempFile;
+        }
+        synchronized (entries) {
+            if (loads.get(key) != load) {
+                return tempFile;
+            }
+            try {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, "Cannot cache " + key, e);
+            }
+            Long previousSize = entries.put(key, fileSize);
+            size += fileSize - (previousSize != null ? previousSize : 0);
+            evict();
+        }
+        return file;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        // the most recently added entry is the last one and always fits
+        while (size > maxSize && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            size -= eldest.getValue();
+            deleteFile(getFile(eldest.getKey()));
+            statistics.cacheEvictions.increment();
+        }
+    }
+
+    private void removeEntry(String key) {
+        Long removedSize = entries.remove(key);
+        if (removedSize != null) {
+            size -= removedSize;
+            deleteFile(getFile(key));
+        }
+    }
+
+    private InputStream openFile(Path file) throws IOException {
+        return Channels.newInputStream(FileChannel.open(file, StandardOpenOption.READ));
+    }
+
+    private void deleteFile(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Cannot delete cached file {}", file, e);
+        }
+    }
+
+    /**
+     * Removes the files left by a previous run. The directory is configured by the user and may be shared,
+     * so only the files named like the ones of the cache are removed.
+     */
+    private void clearDirectory() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                file -> Files.isRegularFile(file) && CACHE_FILE_NAME.matcher(file.getFileName().toString()).matches())) {
+            for (Path file : files) {
+                deleteFile(file);
+            }
+        } catch (IOException e) {
+            log.warn("Cannot clear cache directory {}", directory, e);
+        }
+    }
+
+    private Path getFile(String key) {
+        return directory.resolve(UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)).toString());
+    }
+
+    long getSize() {
+        synchronized (entries) {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package cn.jmix.tencentfs;
+
+import javax.annotation.Nullable;
+import java.util.Date;
+
+/**
+ * Incomplete multipart upload of a bucket of the storage.
+ */
+public class MultipartUploadInfo {
+
+    protected final String bucket;
+    protected final String key;
+    protected final String uploadId;
+    protected final Date initiated;
+    protected final boolean inProgress;
+
+    public MultipartUploadInfo(String bucket, String key, String uploadId, @Nullable Date initiated, boolean inProgress) {
+        this.bucket = bucket;
+        this.key = key;
+        this.uploadId = uploadId;
+        this.initiated = initiated;
+        this.inProgress = inProgress;
+    }
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getUploadId() {
+        return uploadId;
+    }
+
+    @Nullable
+    public Date getInitiated() {
+        return initiated;
+    }
+
+    /**
+     * Whether parts of the upload are being sent by this process, so it is not aborted by sweeps.
+     */
+    public boolean isInProgress() {
+        return inProgress;
+    }
+
+    @Override
+    public String toString() {
+        return bucket + "/" + key + " uploadId=" + uploadId + " initiated=" + initiated
+                + (inProgress ? " (in progress)" : "");
+    }
+}
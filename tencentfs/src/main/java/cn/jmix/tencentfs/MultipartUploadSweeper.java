@@ -0,0 +1,212 @@
+package cn.jmix.tencentfs;
+
+import com.qcloud.cos.model.AbortMultipartUploadRequest;
+import com.qcloud.cos.model.ListMultipartUploadsRequest;
+import com.qcloud.cos.model.MultipartUpload;
+import com.qcloud.cos.model.MultipartUploadListing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aborts the incomplete multipart uploads of the buckets of a storage that were initiated before a given age,
+ * such as the uploads of failed or stopped processes, whose stored parts are billed until they are removed.
+ * Uploads in progress in this process are never aborted. Resumable uploads are aborted like the other ones once
+ * they are old enough and their persisted state is deleted, so resuming them starts a new upload.
+ * The listing and abort requests of a sweep have the
+ * {@link TransferPriority#BATCH batch} priority of the transfer limits, and at most {@code parallelism} uploads
+ * are aborted at the same time, so a sweep yields to the file transfers of the storage.
+ */
+class MultipartUploadSweeper {
+
+    private static final Logger log = LoggerFactory.getLogger(MultipartUploadSweeper.class);
+
+    private static final int LIST_PAGE_SIZE = 1000;
+
+    private final TencentFileStorage storage;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private final LongAdder sweeps = new LongAdder();
+    private final LongAdder listedUploads = new LongAdder();
+    private final LongAdder abortedUploads = new LongAdder();
+    private final LongAdder failedAborts = new LongAdder();
+    private volatile Date lastSweep;
+    private volatile long lastSweepDuration;
+    private volatile String lastError;
+
+    MultipartUploadSweeper(TencentFileStorage storage) {
+        this.storage = storage;
+    }
+
+    /**
+     * Lists the incomplete multipart uploads of all buckets that receive uploads.
+     */
+    List<MultipartUploadInfo> listUploads() throws InterruptedException {
+        List<MultipartUploadInfo> uploads = new ArrayList<>();
+        List<CosClientHolder> targets = storage.acquireUploadTargets();
+        try {
+            for (CosClientHolder target : targets) {
+                forEachUpload(target, upload -> uploads.add(new MultipartUploadInfo(target.getBucket(),
+                        upload.getKey(), upload.getUploadId(), upload.getInitiated(),
+                        storage.isUploadInProgress(upload.getUploadId()))));
+            }
+        } finally {
+            targets.forEach(CosClientHolder::release);
+        }
+        return uploads;
+    }
+
+    /**
+     * Aborts the uploads initiated at least {@code maxAge} ms ago that are not in progress in this process.
+     *
+     * @return number of aborted uploads, -1 if another sweep is running
+     */
+    int sweep(long maxAge, int parallelism) {
+        if (!running.compareAndSet(false, true)) {
+            log.debug("Sweep of multipart uploads of {} is already running", storage.getStorageName());
+            return -1;
+        }
+        long started = System.currentTimeMillis();
+        lastSweep = new Date(started);
+        Set<String> aborted = ConcurrentHashMap.newKeySet();
+        List<CompletableFuture<Void>> aborts = new ArrayList<>();
+        try {
+            Date cutoff = new Date(storage.timeSource.currentTimestamp().getTime() - maxAge);
+            Semaphore abortPermits = new Semaphore(Math.max(1, parallelism));
+            List<CosClientHolder> targets = storage.acquireUploadTargets();
+            try {
+                for (CosClientHolder target : targets) {
+                    forEachUpload(target, upload -> {
+                        listedUploads.increment();
+                        if (upload.getInitiated() == null || upload.getInitiated().after(cutoff)
+                                || storage.isUploadInProgress(upload.getUploadId())) {
+                            return;
+                        }
+                        abortPermits.acquireUninterruptibly();
+                        aborts.add(CompletableFuture.runAsync(() -> {
+                            try {
+                                if (abort(target, upload)) {
+                                    aborted.add(upload.getUploadId());
+                                }
+                            } finally {
+                                abortPermits.release();
+                            }
+                        }, storage.getRequestExecutor()));
+                    });
+                }
+                CompletableFuture.allOf(aborts.toArray(new CompletableFuture[0])).join();
+            } finally {
+                targets.forEach(CosClientHolder::release);
+                storage.uploadStateRepository.deleteUploads(aborted);
+            }
+            lastError = null;
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            lastError = e.toString();
+            log.warn("Sweep of multipart uploads of {} failed", storage.getStorageName(), e);
+        } finally {
+            lastSweepDuration = System.currentTimeMillis() - started;
+            sweeps.increment();
+            running.set(false);
+        }
+        if (!aborted.isEmpty()) {
+            log.info("Sweep of {} aborted {} incomplete multipart uploads initiated more than {} ms ago",
+                    storage.getStorageName(), aborted.size(), maxAge);
+        }
+        return aborted.size();
+    }
+
+    private void forEachUpload(CosClientHolder target, UploadConsumer consumer) throws InterruptedException {
+        ListMultipartUploadsRequest request = new ListMultipartUploadsRequest(target.getBucket());
+        request.setMaxUploads(LIST_PAGE_SIZE);
+        MultipartUploadListing listing;
+        do {
+            TransferLimiter limiter = storage.transferLimiter;
+            limiter.acquireRequest(TransferPriority.BATCH);
+            try {
+                listing = target.getClient().listMultipartUploads(request);
+                limiter.requestSucceeded();
+            } catch (RuntimeException e) {
+                limiter.requestFailed(e);
+                throw e;
+            }
+            for (MultipartUpload upload : listing.getMultipartUploads()) {
+                consumer.accept(upload);
+            }
+            request.setKeyMarker(listing.getNextKeyMarker());
+            request.setUploadIdMarker(listing.getNextUploadIdMarker());
+        } while (listing.isTruncated());
+    }
+
+    private boolean abort(CosClientHolder target, MultipartUpload upload) {
+        TransferLimiter limiter = storage.transferLimiter;
+        try {
+            limiter.acquireRequest(TransferPriority.BATCH);
+            target.getClient().abortMultipartUpload(
+                    new AbortMultipartUploadRequest(target.getBucket(), upload.getKey(), upload.getUploadId()));
+            limiter.requestSucceeded();
+            abortedUploads.increment();
+            log.debug("Aborted multipart upload {} of {} initiated at {}", upload.getUploadId(), upload.getKey(),
+                    upload.getInitiated());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            limiter.requestFailed(e);
+            log.warn("Cannot abort multipart upload {} of {}", upload.getUploadId(), upload.getKey(), e);
+        }
+        failedAborts.increment();
+        return false;
+    }
+
+    /**
+     * Number of completed sweeps, successful or not.
+     */
+    long getSweeps() {
+        return sweeps.sum();
+    }
+
+    long getListedUploads() {
+        return listedUploads.sum();
+    }
+
+    long getAbortedUploads() {
+        return abortedUploads.sum();
+    }
+
+    long getFailedAborts() {
+        return failedAborts.sum();
+    }
+
+    boolean isRunning() {
+        return running.get();
+    }
+
+    @Override
+    public String toString() {
+        return "sweeps=" + sweeps.sum()
+                + ", running=" + running.get()
+                + ", lastSweep=" + lastSweep
+                + ", lastSweepDuration=" + lastSweepDuration + " ms"
+                + ", listedUploads=" + listedUploads.sum()
+                + ", abortedUploads=" + abortedUploads.sum()
+                + ", failedAborts=" + failedAborts.sum()
+                + ", lastError=" + lastError;
+    }
+
+    private interface UploadConsumer {
+
+        void accept(MultipartUpload upload) throws InterruptedException;
+    }
+}
@@ -0,0 +1,23 @@
+package cn.jmix.tencentfs;
+
+/**
+ * Layout of the keys of new objects. The layout only affects new files, stored files keep their keys.
+ */
+public enum ObjectKeyLayout {
+
+    /**
+     * {@code yyyy/MM/dd/uuid.ext}. All writes of a day share one key prefix.
+     */
+    DATE,
+
+    /**
+     * {@code xx/yyyy/MM/dd/uuid.ext}, where {@code xx} are the first two hexadecimal digits of the UUID.
+     * Spreads the writes of a day over 256 prefixes and keeps the date in the key.
+     */
+    HASHED_DATE,
+
+    /**
+     * {@code uuid.ext}. Keys are spread over the whole key space.
+     */
+    UUID_FIRST
+}
@@ -0,0 +1,96 @@
+package cn.jmix.tencentfs;
+
+import javax.annotation.Nullable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded cache of object metadata. Missing objects are cached as well, with their own time to live.
+ */
+class ObjectMetadataCache {
+
+    private static final TencentObjectMetadata MISSING = new TencentObjectMetadata(-1, null, null, null);
+
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    // guarded by itself, iterates from the least recently used entry
+    private final LinkedHashMap<String, Entry> entries;
+
+    ObjectMetadataCache(int maxEntries, long ttlSeconds, long negativeTtlSeconds) {
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.negativeTtlNanos = TimeUnit.SECONDS.toNanos(negativeTtlSeconds);
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached lookup result or {@code null} if the key is not cached.
+     * A cached missing object is returned as an empty lookup result.
+     */
+    @Nullable
+    Lookup get(String key) {
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (System.nanoTime() - entry.expiresAt > 0) {
+                entries.remove(key);
+                return null;
+            }
+            return new Lookup(entry.metadata == MISSING ? null : entry.metadata);
+        }
+    }
+
+    /**
+     * Caches the lookup result of the key. If results of its kind are not cached, a previous result is removed,
+     * so a removed object is not reported with the metadata it had.
+     */
+    void put(String key, @Nullable TencentObjectMetadata metadata) {
+        long ttl = metadata != null ? ttlNanos : negativeTtlNanos;
+        if (ttl <= 0) {
+            invalidate(key);
+            return;
+        }
+        Entry entry = new Entry(metadata != null ? metadata : MISSING, System.nanoTime() + ttl);
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+    }
+
+    void invalidate(String key) {
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    static class Lookup {
+
+        private final TencentObjectMetadata metadata;
+
+        Lookup(@Nullable TencentObjectMetadata metadata) {
+            this.metadata = metadata;
+        }
+
+        @Nullable
+        TencentObjectMetadata getMetadata() {
+            return metadata;
+        }
+    }
+
+    private static class Entry {
+
+        private final TencentObjectMetadata metadata;
+        private final long expiresAt;
+
+        Entry(TencentObjectMetadata metadata, long expiresAt) {
+            this.metadata = metadata;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package cn.jmix.tencentfs;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of reusable part buffers shared by all uploads of a storage.
+ * Buffers are allocated lazily and at most {@code maxIdle} released buffers are kept for reuse.
+ */
+class PartBufferPool {
+
+    private final int bufferSize;
+    private final int maxIdle;
+    private final BlockingQueue<byte[]> idleBuffers;
+    private final AtomicInteger allocatedCount = new AtomicInteger();
+
+    PartBufferPool(int bufferSize, int maxIdle) {
+        this.bufferSize = bufferSize;
+        this.maxIdle = Math.max(1, maxIdle);
+        this.idleBuffers = new ArrayBlockingQueue<>(this.maxIdle);
+    }
+
+    byte[] acquire() {
+        byte[] buffer = idleBuffers.poll();
+        if (buffer != null) {
+            return buffer;
+        }
+        allocatedCount.incrementAndGet();
+        return new byte[bufferSize];
+    }
+
+    void release(byte[] buffer) {
+        if (buffer.length == bufferSize) {
+            idleBuffers.offer(buffer);
+        }
+    }
+
+    int getBufferSize() {
+        return bufferSize;
+    }
+
+    int getMaxIdle() {
+        return maxIdle;
+    }
+
+    /**
+     * Number of released buffers kept for reuse.
+     */
+    int getIdleCount() {
+        return idleBuffers.size();
+    }
+
+    /**
+     * Number of buffers allocated by the pool since it was created.
+     */
+    int getAllocatedCount() {
+        return allocatedCount.get();
+    }
+}
@@ -6,31 +6,66 @@ import com.qcloud.cos.model.PartETag;
 import com.qcloud.cos.model.UploadPartRequest;
 import com.qcloud.cos.model.UploadPartResult;
 import io.jmix.core.FileStorageException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.List;
 
 class PartUploader implements Runnable {
 
+    private static final Logger log = LoggerFactory.getLogger(PartUploader.class);
+
     private final String bucketName;
     private final String objectName;
     private final COSClient client;
-    private final List<PartETag> partETags;
+    private final PartETag[] partETags;
     private final byte[] data;
-    
+    private final File file;
+    private final long fileOffset;
+
     private final long partSize;
     private final int partNumber;
     private final String uploadId;
+    private Long checksum;
+    private final long[] partChecksums;
+    private final RetryPolicy retryPolicy;
+    private final TencentStorageStatistics statistics;
+    private final TencentFileStorageMetrics metrics;
+    private final UploadTuner tuner;
+    private final TransferLimiter limiter;
+    private final TransferPriority priority;
+    private final Runnable releaseCallback;
 
 
-    public PartUploader(COSClient  client, List<PartETag> partETags, byte[] chunkedData,
+    public PartUploader(COSClient  client, PartETag[] partETags, byte[] chunkedData,
                         String objectName,
                         String bucketName,
                         long partSize,
-                        int partNumber, String uploadId) {
+                        int partNumber, String uploadId,
+                        @Nullable Long checksum,
+                        RetryPolicy retryPolicy,
+                        TencentStorageStatistics statistics,
+                        TencentFileStorageMetrics metrics,
+                        UploadTuner tuner,
+                        TransferLimiter limiter,
+                        TransferPriority priority,
+                        Runnable releaseCallback) {
         this.data=chunkedData;
+        this.file = null;
+        this.fileOffset = 0;
+        this.checksum = checksum;
+        this.partChecksums = null;
+        this.retryPolicy = retryPolicy;
+        this.statistics = statistics;
+        this.metrics = metrics;
+        this.tuner = tuner;
+        this.limiter = limiter;
+        this.priority = priority;
+        this.releaseCallback = releaseCallback;
         this.client=client;
         this.partETags=partETags;
         this.partSize = partSize;
@@ -40,40 +75,118 @@ class PartUploader implements Runnable {
         this.objectName=objectName;
     }
 
+    /**
+     * Creates an uploader of a part that is read from a region of the file by the COS client,
+     * so the part is not buffered on heap.
+     *
+     * @param partChecksums if not {@code null}, the CRC64 of the region is computed before the part is sent,
+     *                      stored in the slot of the part and compared with the one reported by COS
+     */
+    public PartUploader(COSClient client, PartETag[] partETags, File file, long fileOffset,
+                        String objectName,
+                        String bucketName,
+                        long partSize,
+                        int partNumber, String uploadId,
+                        @Nullable long[] partChecksums,
+                        RetryPolicy retryPolicy,
+                        TencentStorageStatistics statistics,
+                        TencentFileStorageMetrics metrics,
+                        UploadTuner tuner,
+                        TransferLimiter limiter,
+                        TransferPriority priority,
+                        Runnable releaseCallback) {
+        this.data = null;
+        this.file = file;
+        this.fileOffset = fileOffset;
+        this.checksum = null;
+        this.partChecksums = partChecksums;
+        this.retryPolicy = retryPolicy;
+        this.statistics = statistics;
+        this.metrics = metrics;
+        this.tuner = tuner;
+        this.limiter = limiter;
+        this.priority = priority;
+        this.releaseCallback = releaseCallback;
+        this.client = client;
+        this.partETags = partETags;
+        this.partSize = partSize;
+        this.bucketName = bucketName;
+        this.partNumber = partNumber;
+        this.uploadId = uploadId;
+        this.objectName = objectName;
+    }
+
     @Override
     public void run() {
-        InputStream instream = null;
         try {
+            if (partChecksums != null && checksum == null) {
+                checksum = Crc64.ofFile(file.toPath(), fileOffset, partSize);
+                partChecksums[partNumber - 1] = checksum;
+            }
+            limiter.acquireUpload(partSize, priority);
+            for (int attempt = 1; ; attempt++) {
+                limiter.acquireRequest(priority);
+                long start = System.nanoTime();
+                try {
+                    uploadPart();
+                    limiter.requestSucceeded();
+                    long duration = System.nanoTime() - start;
+                    metrics.partUploaded(duration, partSize);
+                    tuner.partUploaded(duration, partSize);
+                    return;
+                } catch (Exception e) {
+                    limiter.requestFailed(e);
+                    if (!retryPolicy.shouldRetry(e, attempt)) {
+                        throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, "uploading a part of data failed", e);
+                    }
+                    long backoff = retryPolicy.getBackoff(attempt);
+                    log.warn("Uploading part {} of {} failed, retrying in {} ms: {}", partNumber, objectName, backoff, e.toString());
+                    statistics.partRetries.increment();
+                    Thread.sleep(backoff);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, "uploading a part of data interrupted", e);
+        } catch (IOException e) {
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, "reading a part of the file failed", e);
+        } finally {
+            releaseCallback.run();
+        }
+    }
 
-            instream = new ByteArrayInputStream(this.data);
-//            instream.skip(this.startPos);
+    private void uploadPart() throws IOException {
+        InputStream instream = null;
+        try {
             UploadPartRequest uploadPartRequest = new UploadPartRequest();
             uploadPartRequest.setBucketName(bucketName);
             uploadPartRequest.setKey(objectName);
             uploadPartRequest.setUploadId(this.uploadId);
-            uploadPartRequest.setInputStream(instream);
+            if (file != null) {
+                uploadPartRequest.setFile(file);
+                uploadPartRequest.setFileOffset(fileOffset);
+            } else {
+                instream = new ByteArrayInputStream(this.data, 0, (int) this.partSize);
+                uploadPartRequest.setInputStream(instream);
+            }
             uploadPartRequest.setPartSize(this.partSize);
             uploadPartRequest.setPartNumber(this.partNumber);
 
             UploadPartResult uploadPartResult = client.uploadPart(uploadPartRequest);
-            synchronized (partETags) {
-                partETags.add(uploadPartResult.getPartETag());
+            if (checksum != null && !Crc64.isReported(uploadPartResult.getCrc64Ecma())) {
+                statistics.unverifiedChecksums.increment();
+                log.debug("COS did not report the CRC64 of part {} of {}, the part is not verified", partNumber, objectName);
+            } else if (checksum != null && !Crc64.matches(checksum, uploadPartResult.getCrc64Ecma())) {
+                statistics.checksumMismatches.increment();
+                // retried like any failed upload of the part
+                throw new IOException(String.format("CRC64 of part %d of %s does not match the sent data", partNumber, objectName));
             }
-        } catch (Exception e) {
-          throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION,"uploading a part of data failed",e);
+            // every part owns its slot, the completion of the part future publishes it to the uploading thread
+            partETags[partNumber - 1] = uploadPartResult.getPartETag();
         } finally {
             if (instream != null) {
-                try {
-                    instream.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+                instream.close();
             }
         }
     }
-
-
-
-
-
 }
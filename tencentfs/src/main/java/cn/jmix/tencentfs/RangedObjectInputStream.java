@@ -0,0 +1,242 @@
+package cn.jmix.tencentfs;
+
+import com.qcloud.cos.COSClient;
+import com.qcloud.cos.exception.CosServiceException;
+import com.qcloud.cos.model.COSObject;
+import com.qcloud.cos.model.COSObjectInputStream;
+import com.qcloud.cos.model.GetObjectRequest;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Reads an object with concurrent ranged GET requests and returns the ranges in order.
+ * At most {@code prefetch} ranges are fetched ahead of the reader, each into a buffer of the pool,
+ * so the memory used by the stream is bounded by {@code (prefetch + 1) * rangeSize}.
+ * Closing the stream aborts the ranges in flight and releases the lease of the client.
+ * Each range is requested with the {@code If-Match} ETag of the object, so an object overwritten
+ * while it is read fails the stream instead of mixing the ranges of two versions.
+ */
+class RangedObjectInputStream extends InputStream {
+
+    private static final Logger log = LoggerFactory.getLogger(RangedObjectInputStream.class);
+
+    private final CosClientHolder target;
+    private final COSClient client;
+    private final String bucket;
+    private final String key;
+    private final String eTag;
+    private final long contentLength;
+    private final int prefetch;
+    private final Executor executor;
+    private final PartBufferPool bufferPool;
+    private final RetryPolicy retryPolicy;
+    private final TransferLimiter limiter;
+    private final TransferPriority priority;
+
+    private final ArrayDeque<CompletableFuture<byte[]>> window = new ArrayDeque<>();
+    private final Map<Long, COSObjectInputStream> streamsInFlight = new ConcurrentHashMap<>();
+
+    private long nextRangeStart;
+    private long position;
+    private byte[] current;
+    private int currentPosition;
+    private int currentLength;
+    private volatile boolean closed;
+
+    RangedObjectInputStream(CosClientHolder target, String key, @Nullable String eTag, long contentLength,
+                            int prefetch, Executor executor, PartBufferPool bufferPool, RetryPolicy retryPolicy,
+                            TransferLimiter limiter, TransferPriority priority) {
+        this.target = target;
+        this.client = target.getClient();
+        this.bucket = target.getBucket();
+        this.key = key;
+        this.eTag = eTag;
+        this.contentLength = contentLength;
+        this.prefetch = Math.max(1, prefetch);
+        this.executor = executor;
+        this.bufferPool = bufferPool;
+        this.retryPolicy = retryPolicy;
+        this.limiter = limiter;
+        this.priority = priority;
+        fillWindow();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureCurrent()) {
+            return -1;
+        }
+        return current[currentPosition++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureCurrent()) {
+            return -1;
+        }
+        int count = Math.min(len, currentLength - currentPosition);
+        System.arraycopy(current, currentPosition, b, off, count);
+        currentPosition += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return current == null ? 0 : currentLength - currentPosition;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        releaseCurrent();
+        // ranges that are not started yet do not start, the ones in flight are aborted below;
+        // a cancelled future would drop the buffer of its range, so each buffer is released once its range ends
+        for (CompletableFuture<byte[]> future : window) {
+            future.whenComplete((buffer, error) -> {
+                if (buffer != null) {
+                    bufferPool.release(buffer);
+                }
+            });
+        }
+        window.clear();
+        for (COSObjectInputStream stream : streamsInFlight.values()) {
+            stream.abort();
+        }
+        target.release();
+    }
+
+    private boolean ensureCurrent() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (current != null && currentPosition < currentLength) {
+            return true;
+        }
+        releaseCurrent();
+        CompletableFuture<byte[]> future = window.poll();
+        if (future == null) {
+            return false;
+        }
+        try {
+            current = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Reading " + key + " interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("Cannot read a range of " + key, e.getCause());
+        }
+        currentPosition = 0;
+        currentLength = (int) Math.min(bufferPool.getBufferSize(), contentLength - position);
+        position += currentLength;
+        fillWindow();
+        return true;
+    }
+
+    private void releaseCurrent() {
+        if (current != null) {
+            bufferPool.release(current);
+            current = null;
+        }
+    }
+
+    private void fillWindow() {
+        while (window.size() < prefetch && nextRangeStart < contentLength) {
+            long start = nextRangeStart;
+            int length = (int) Math.min(bufferPool.getBufferSize(), contentLength - start);
+            nextRangeStart += length;
+            window.add(CompletableFuture.supplyAsync(() -> fetch(start, length), executor));
+        }
+    }
+
+    private byte[] fetch(long start, int length) {
+        for (int attempt = 1; ; attempt++) {
+            if (closed) {
+                throw new CancellationException();
+            }
+            byte[] buffer = bufferPool.acquire();
+            try {
+                limiter.acquireRequest(priority);
+                readRange(start, length, buffer);
+                limiter.requestSucceeded();
+                return buffer;
+            } catch (Exception e) {
+                bufferPool.release(buffer);
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                    throw new CompletionException(e);
+                }
+                limiter.requestFailed(e);
+                if (closed || e instanceof ObjectModifiedException || !retryPolicy.shouldRetry(e, attempt)) {
+                    throw new CompletionException(e);
+                }
+                long backoff = retryPolicy.getBackoff(attempt);
+                log.warn("Reading range {}-{} of {} failed, retrying in {} ms: {}", start, start + length - 1, key, backoff, e.toString());
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new CompletionException(ie);
+                }
+            }
+        }
+    }
+
+    private void readRange(long start, int length, byte[] buffer) throws IOException {
+        GetObjectRequest request = new GetObjectRequest(bucket, key);
+        request.setRange(start, start + length - 1);
+        if (eTag != null) {
+            request.setMatchingETagConstraints(Collections.singletonList(eTag));
+        }
+        COSObject object;
+        try {
+            object = client.getObject(request);
+        } catch (CosServiceException e) {
+            if (e.getStatusCode() == 412) {
+                throw new ObjectModifiedException(key, e);
+            }
+            throw e;
+        }
+        if (object == null) {
+            // the client returns no object when the constraints are not met
+            throw new ObjectModifiedException(key, null);
+        }
+        COSObjectInputStream inputStream = object.getObjectContent();
+        streamsInFlight.put(start, inputStream);
+        try {
+            if (closed) {
+                inputStream.abort();
+                throw new IOException("Stream closed");
+            }
+            IOUtils.readFully(inputStream, buffer, 0, length);
+        } finally {
+            streamsInFlight.remove(start);
+            inputStream.close();
+        }
+    }
+
+    /**
+     * The object no longer has the ETag it had when the stream was opened, retrying does not help.
+     */
+    static class ObjectModifiedException extends IOException {
+
+        ObjectModifiedException(String key, @Nullable Throwable cause) {
+            super("Object " + key + " was modified while it was read", cause);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package cn.jmix.tencentfs;
+
+import com.qcloud.cos.exception.CosClientException;
+import com.qcloud.cos.exception.CosServiceException;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides whether a failed COS request is retried and how long to wait before the next attempt.
+ * Uses exponential backoff with full jitter.
+ */
+class RetryPolicy {
+
+    private final int maxAttempts;
+    private final long initialBackoff;
+    private final long maxBackoff;
+
+    /**
+     * @param maxAttempts    total number of attempts including the first one
+     * @param initialBackoff backoff before the second attempt (ms)
+     * @param maxBackoff     upper bound of a single backoff (ms)
+     */
+    RetryPolicy(int maxAttempts, long initialBackoff, long maxBackoff) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoff = Math.max(1, initialBackoff);
+        this.maxBackoff = Math.max(this.initialBackoff, maxBackoff);
+    }
+
+    int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    boolean shouldRetry(Throwable error, int attempt) {
+        return attempt < maxAttempts && isRetryable(error);
+    }
+
+    boolean isRetryable(Throwable error) {
+        if (error instanceof CosServiceException) {
+            int statusCode = ((CosServiceException) error).getStatusCode();
+            return statusCode >= 500 || statusCode == 429 || statusCode == 408;
+        }
+        return error instanceof CosClientException || error instanceof IOException;
+    }
+
+    /**
+     * Returns a random backoff (ms) before the attempt following the given one.
+     */
+    long getBackoff(int attempt) {
+        long ceiling = initialBackoff << Math.min(attempt - 1, 30);
+        if (ceiling <= 0 || ceiling > maxBackoff) {
+            ceiling = maxBackoff;
+        }
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+}
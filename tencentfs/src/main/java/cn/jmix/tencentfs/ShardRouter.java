@@ -0,0 +1,133 @@
+package cn.jmix.tencentfs;
+
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Routes keys to the buckets of the shards of a storage. New keys are assigned to a shard by consistent hashing
+ * and start with the identifier of the shard, so the shard of a stored file is known from its key alone.
+ * Keys that do not start with a shard identifier belong to the default bucket of the storage.
+ */
+class ShardRouter {
+
+    private static final int VIRTUAL_NODES_PER_WEIGHT = 128;
+
+    private final Map<String, Shard> shards = new HashMap<>();
+    // positions of the virtual nodes on the ring in ascending order and the shards they belong to
+    private final long[] ring;
+    private final Shard[] ringShards;
+
+    ShardRouter(List<Shard> shards) {
+        TreeMap<Long, Shard> nodes = new TreeMap<>();
+        for (Shard shard : shards) {
+            if (this.shards.put(shard.getId(), shard) != null) {
+                throw new IllegalArgumentException("Duplicate shard id " + shard.getId());
+            }
+            for (int i = 0; i < shard.getWeight() * VIRTUAL_NODES_PER_WEIGHT; i++) {
+                nodes.put(hash(shard.getId() + "#" + i), shard);
+            }
+        }
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("No shard with a positive weight");
+        }
+        ring = new long[nodes.size()];
+        ringShards = new Shard[nodes.size()];
+        int index = 0;
+        for (Map.Entry<Long, Shard> node : nodes.entrySet()) {
+            ring[index] = node.getKey();
+            ringShards[index] = node.getValue();
+            index++;
+        }
+    }
+
+    /**
+     * Returns the shard that a new key is stored in.
+     */
+    Shard selectShard(String key) {
+        int index = Arrays.binarySearch(ring, hash(key));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return ringShards[index == ring.length ? 0 : index];
+    }
+
+    /**
+     * Returns the shard of a stored key or {@code null} if the key belongs to the default bucket.
+     */
+    @Nullable
+    Shard getShard(String key) {
+        int separator = key.indexOf('/');
+        return separator > 0 ? shards.get(key.substring(0, separator)) : null;
+    }
+
+    Collection<Shard> getShards() {
+        return shards.values();
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the characters followed by the MurmurHash3 finalizer, which spreads
+     * the similar keys of the virtual nodes over the whole ring.
+     */
+    static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    static class Shard {
+
+        // first segments of the keys of the default bucket: years of DATE keys and hash prefixes of HASHED_DATE keys
+        private static final Pattern KEY_PREFIX = Pattern.compile("\\d+|[0-9a-f]{2}");
+
+        private final String id;
+        private final int weight;
+        private final CosClientHolder writeTarget;
+        private final CosClientHolder readTarget;
+
+        Shard(String id, int weight, CosClientHolder writeTarget, CosClientHolder readTarget) {
+            if (id.isEmpty() || id.indexOf('/') >= 0) {
+                throw new IllegalArgumentException("Invalid shard id '" + id + "'");
+            }
+            if (KEY_PREFIX.matcher(id).matches()) {
+                // files of the default bucket would be routed to the shard
+                throw new IllegalArgumentException("Shard id '" + id + "' can be the first directory of a file key,"
+                        + " use an id that is not a number or two hexadecimal digits");
+            }
+            this.id = id;
+            this.weight = weight;
+            this.writeTarget = writeTarget;
+            this.readTarget = readTarget;
+        }
+
+        String getId() {
+            return id;
+        }
+
+        int getWeight() {
+            return weight;
+        }
+
+        /**
+         * Client of the primary bucket of the shard, which receives uploads and removals.
+         */
+        CosClientHolder getWriteTarget() {
+            return writeTarget;
+        }
+
+        /**
+         * Client of the bucket closest to this node, the primary one or a replica in the local region.
+         */
+        CosClientHolder getReadTarget() {
+            return readTarget;
+        }
+    }
+}
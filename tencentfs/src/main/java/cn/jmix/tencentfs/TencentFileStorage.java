@@ -5,11 +5,17 @@ import com.qcloud.cos.COSClient;
 import com.qcloud.cos.ClientConfig;
 import com.qcloud.cos.auth.BasicCOSCredentials;
 import com.qcloud.cos.auth.COSCredentials;
+import com.qcloud.cos.endpoint.SuffixEndpointBuilder;
+import com.qcloud.cos.endpoint.UserSpecifiedEndpointBuilder;
+import com.qcloud.cos.exception.CosServiceException;
+import com.qcloud.cos.exception.MultiObjectDeleteException;
 import com.qcloud.cos.http.HttpProtocol;
 import com.qcloud.cos.model.*;
 import com.qcloud.cos.region.Region;
 import io.jmix.core.*;
 import io.jmix.core.annotation.Internal;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -18,16 +24,33 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.context.event.ApplicationStartedEvent;
 import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Nullable;
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Method;
+import java.net.URLDecoder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 @Internal
 @Component("tencentfs_FileStorage")
@@ -36,6 +59,23 @@ public class TencentFileStorage implements FileStorage {
     private static final Logger log = LoggerFactory.getLogger(TencentFileStorage.class);
     public static final String DEFAULT_STORAGE_NAME = "cos";
 
+    /**
+     * Maximum number of parts of a COS multipart upload.
+     */
+    protected static final int MAX_PART_COUNT = 10000;
+
+    /**
+     * Maximum number of keys of a COS multi-object delete request.
+     */
+    protected static final int MAX_DELETE_BATCH_SIZE = 1000;
+
+    /**
+     * Size of the reads that fill a part buffer, each block is added to the checksum of the part right after it is read.
+     */
+    protected static final int READ_BLOCK_SIZE = 64 * 1024;
+
+    protected static final String CRC64_HEADER = "x-cos-hash-crc64ecma";
+
     protected String storageName;
 
     @Autowired
@@ -53,7 +93,162 @@ public class TencentFileStorage implements FileStorage {
     @Autowired
     protected TimeSource timeSource;
 
-    protected AtomicReference<COSClient> clientReference = new AtomicReference<>();
+    protected AtomicReference<CosClientHolder> clientReference = new AtomicReference<>();
+
+    protected int uploadPoolSize = 16;
+    protected int uploadQueueCapacity = 256;
+    /**
+     * Number of parts of a single upload that are buffered and sent at the same time.
+     * Peak heap usage of an upload is about {@code chunkSize * uploadParallelism}.
+     */
+    protected int uploadParallelism = 5;
+    /**
+     * Whether the part size and the number of parts in flight are chosen per upload from the content length and
+     * the observed throughput instead of {@link #chunkSize} and {@link #uploadParallelism}, see {@link UploadTuner}.
+     */
+    protected boolean adaptivePartSize;
+    protected boolean uploadVirtualThreads;
+    /**
+     * Files smaller than this size (kB) and than {@link #chunkSize} are uploaded with a single PUT request.
+     */
+    protected int multipartThreshold = 8192;
+    /**
+     * Whether parts are listed and compared with the uploaded ones before a multipart upload is completed.
+     */
+    protected boolean verifyParts;
+    /**
+     * Whether the CRC64 of uploaded parts and objects and of downloaded objects is compared with the one reported by COS.
+     */
+    protected boolean verifyUploadChecksums = true;
+    protected boolean verifyDownloadChecksums;
+
+    protected int partRetryAttempts = 4;
+    protected long partRetryBackoff = 200;
+    protected long partRetryMaxBackoff = 10000;
+    protected String uploadStateDirectory;
+    /**
+     * Objects of this size (kB) or larger are downloaded with parallel ranged requests, 0 disables ranged downloads.
+     */
+    protected int downloadRangeThreshold;
+    protected int downloadRangeSize = 8192;
+    protected int downloadPrefetch = 4;
+    protected int downloadPoolSize = 16;
+    protected boolean cacheEnabled;
+    protected String cacheDirectory;
+    /**
+     * Maximum total size (MB) of the files in the local cache.
+     */
+    protected long cacheMaxSize = 1024;
+    protected int metadataCacheSize = 10000;
+    protected long metadataCacheTtl = 60;
+    protected long metadataCacheNegativeTtl = 10;
+    protected int requestPoolSize = 8;
+    protected int removeParallelism = 4;
+    protected int maxConnections = 1024;
+    protected int connectionTimeout = 30000;
+    protected int socketTimeout = 30000;
+    protected int connectionRequestTimeout = -1;
+    protected int idleConnectionAlive = 60000;
+    protected int maxErrorRetry = 3;
+    /**
+     * Time (s) after which a replaced client is shut down even if some of its requests are still in flight.
+     */
+    protected long clientDrainTimeout = 300;
+    /**
+     * Buckets that new files are spread across, empty to store all files in {@link #bucket}.
+     */
+    protected List<TencentFileStorageProperties.Shard> shards = Collections.emptyList();
+    protected String localRegion;
+    protected ObjectKeyLayout keyLayout = ObjectKeyLayout.DATE;
+    /**
+     * Objects of this size (kB) or larger are copied with parallel part copies.
+     */
+    protected int copyMultipartThreshold = 1048576;
+    protected int copyPartSize = 131072;
+    /**
+     * Bandwidth limits (kB/s) of uploads and downloads and the limit of requests per second, 0 for no limit.
+     */
+    protected long uploadBandwidthLimit;
+    protected long downloadBandwidthLimit;
+    protected int requestRateLimit;
+    /**
+     * Interval (min) of the sweeps of incomplete multipart uploads, 0 to disable them, and the age (h) after which
+     * an upload that is not in progress in this process is aborted.
+     */
+    protected long uploadSweepInterval;
+    protected long uploadSweepAge = 24;
+    protected int uploadSweepParallelism = 2;
+    /**
+     * Maximum number of files of {@link #saveStreams} and {@link #openStreams} in flight.
+     */
+    protected int bulkTransferWindow = 16;
+
+    protected final TencentStorageStatistics statistics = new TencentStorageStatistics();
+
+    protected volatile TencentFileStorageMetrics metrics = TencentFileStorageMetrics.NOOP;
+
+    /**
+     * Registries bound with {@link #bindMetrics(MeterRegistry)}, the meters are registered once in this composite.
+     */
+    protected final CompositeMeterRegistry meterRegistry = new CompositeMeterRegistry();
+
+    protected volatile RetryPolicy retryPolicy;
+
+    protected volatile TransferLimiter transferLimiter;
+
+    /**
+     * Routes keys to the clients of the shards, {@code null} if no shards are configured.
+     */
+    protected volatile ShardRouter shardRouter;
+
+    // date directory of the current day, so keys of the day do not format the date again
+    private volatile DateDir dateDir;
+
+    protected volatile UploadStateRepository uploadStateRepository;
+
+    protected volatile PartBufferPool bufferPool;
+
+    // pools of the part sizes chosen by the upload tuner other than the chunk size
+    protected final Map<Integer, PartBufferPool> partBufferPools = new ConcurrentHashMap<>();
+
+    protected volatile UploadTuner uploadTuner;
+
+    // multipart uploads of this process that are not completed or aborted yet, by upload id
+    protected final Map<String, MultipartUploadInfo> uploadsInProgress = new ConcurrentHashMap<>();
+
+    protected final MultipartUploadSweeper uploadSweeper = new MultipartUploadSweeper(this);
+
+    protected volatile ScheduledFuture<?> uploadSweep;
+
+    protected volatile ExecutorService uploadExecutor;
+
+    protected volatile ExecutorService downloadExecutor;
+
+    protected volatile ExecutorService requestExecutor;
+
+    protected volatile ExecutorService operationExecutor;
+
+    protected volatile ScheduledExecutorService scheduler;
+
+    // set by shutdown(), executors are not created again until the client is refreshed
+    protected volatile boolean shutDown;
+
+    protected volatile PartBufferPool rangeBufferPool;
+
+    /**
+     * Local read-through cache of downloaded files, {@code null} if disabled.
+     */
+    protected volatile LocalFileCache cache;
+
+    /**
+     * Cache of existence checks and object metadata, {@code null} if disabled.
+     */
+    protected volatile ObjectMetadataCache metadataCache;
+    /**
+     * Limits the number of concurrent part uploads when they run on virtual threads,
+     * {@code null} for a platform thread pool that is bounded by itself.
+     */
+    protected volatile Semaphore uploadPermits;
 
     public TencentFileStorage() {
         this(DEFAULT_STORAGE_NAME);
@@ -81,6 +276,7 @@ public class TencentFileStorage implements FileStorage {
         this.secretKey = secretKey;
         this.bucket = bucket;
         this.chunkSize = chunkSize;
+        this.endpointUrl = endpointUrl;
     }
 
     @EventListener
@@ -95,192 +291,2022 @@ public class TencentFileStorage implements FileStorage {
             this.bucket = properties.getBucket();
             this.chunkSize = properties.getChunkSize();
             this.region = properties.getRegion();
+            this.endpointUrl = properties.getEndpointUrl();
+            this.uploadPoolSize = properties.getUploadPoolSize();
+            this.uploadQueueCapacity = properties.getUploadQueueCapacity();
+            this.uploadParallelism = properties.getUploadParallelism();
+            this.adaptivePartSize = properties.isAdaptivePartSize();
+            this.uploadVirtualThreads = properties.isUploadVirtualThreads();
+            this.multipartThreshold = properties.getMultipartThreshold();
+            this.verifyParts = properties.isVerifyParts();
+            this.verifyUploadChecksums = properties.isVerifyUploadChecksums();
+            this.verifyDownloadChecksums = properties.isVerifyDownloadChecksums();
+            this.partRetryAttempts = properties.getPartRetryAttempts();
+            this.partRetryBackoff = properties.getPartRetryBackoff();
+            this.partRetryMaxBackoff = properties.getPartRetryMaxBackoff();
+            this.uploadStateDirectory = properties.getUploadStateDirectory();
+            this.downloadRangeThreshold = properties.getDownloadRangeThreshold();
+            this.downloadRangeSize = properties.getDownloadRangeSize();
+            this.downloadPrefetch = properties.getDownloadPrefetch();
+            this.downloadPoolSize = properties.getDownloadPoolSize();
+            this.cacheEnabled = properties.isCacheEnabled();
+            this.cacheDirectory = properties.getCacheDirectory();
+            this.cacheMaxSize = properties.getCacheMaxSize();
+            this.metadataCacheSize = properties.getMetadataCacheSize();
+            this.metadataCacheTtl = properties.getMetadataCacheTtl();
+            this.metadataCacheNegativeTtl = properties.getMetadataCacheNegativeTtl();
+            this.requestPoolSize = properties.getRequestPoolSize();
+            this.removeParallelism = properties.getRemoveParallelism();
+            this.maxConnections = properties.getMaxConnections();
+            this.connectionTimeout = properties.getConnectionTimeout();
+            this.socketTimeout = properties.getSocketTimeout();
+            this.connectionRequestTimeout = properties.getConnectionRequestTimeout();
+            this.idleConnectionAlive = properties.getIdleConnectionAlive();
+            this.maxErrorRetry = properties.getMaxErrorRetry();
+            this.clientDrainTimeout = properties.getClientDrainTimeout();
+            this.shards = properties.getShards();
+            this.localRegion = properties.getLocalRegion();
+            this.keyLayout = properties.getKeyLayout();
+            this.copyMultipartThreshold = properties.getCopyMultipartThreshold();
+            this.copyPartSize = properties.getCopyPartSize();
+            this.uploadBandwidthLimit = properties.getUploadBandwidthLimit();
+            this.downloadBandwidthLimit = properties.getDownloadBandwidthLimit();
+            this.requestRateLimit = properties.getRequestRateLimit();
+            this.uploadSweepInterval = properties.getUploadSweepInterval();
+            this.uploadSweepAge = properties.getUploadSweepAge();
+            this.uploadSweepParallelism = properties.getUploadSweepParallelism();
+            this.bulkTransferWindow = properties.getBulkTransferWindow();
         }
     }
 
 
     public void refreshOssClient() {
+        shutDown = false;
         refreshProperties();
         COSCredentials cred = new BasicCOSCredentials(secretId, secretKey);
-        Region region = new Region(this.region);
+        ShardRouter router = shards.isEmpty() ? null : createShardRouter(cred);
+        COSClient cosClient = createCosClient(cred, createClientConfig());
+        CosClientHolder previous = clientReference.getAndSet(new CosClientHolder(cosClient, bucket));
+        if (previous != null) {
+            retireClient(previous);
+        }
+        ShardRouter previousRouter = shardRouter;
+        shardRouter = router;
+        if (previousRouter != null) {
+            for (ShardRouter.Shard shard : previousRouter.getShards()) {
+                retireClient(shard.getWriteTarget());
+                if (shard.getReadTarget() != shard.getWriteTarget()) {
+                    retireClient(shard.getReadTarget());
+                }
+            }
+        }
+        int chunkSizeBytes = this.chunkSize * 1024;
+        // idle buffers are bounded by the parts in flight of a single upload, not by the whole upload pool
+        if (bufferPool == null || bufferPool.getBufferSize() != chunkSizeBytes
+                || bufferPool.getMaxIdle() != Math.max(1, uploadParallelism)) {
+            bufferPool = new PartBufferPool(chunkSizeBytes, uploadParallelism);
+            partBufferPools.clear();
+        }
+        uploadTuner = new UploadTuner(adaptivePartSize, chunkSizeBytes, uploadParallelism, uploadPoolSize,
+                Math.min(chunkSizeBytes, multipartThreshold * 1024L));
+        int rangeSizeBytes = this.downloadRangeSize * 1024;
+        if (rangeBufferPool == null || rangeBufferPool.getBufferSize() != rangeSizeBytes) {
+            rangeBufferPool = new PartBufferPool(rangeSizeBytes, downloadPoolSize);
+        }
+        retryPolicy = new RetryPolicy(partRetryAttempts, partRetryBackoff, partRetryMaxBackoff);
+        transferLimiter = new TransferLimiter(uploadBandwidthLimit * 1024, downloadBandwidthLimit * 1024,
+                requestRateLimit, partRetryBackoff, partRetryMaxBackoff, statistics);
+        uploadStateRepository = new UploadStateRepository(StringUtils.isNotEmpty(uploadStateDirectory)
+                ? Paths.get(uploadStateDirectory)
+                : Paths.get(System.getProperty("java.io.tmpdir"), "tencentfs-uploads", storageName));
+        if (cacheEnabled && cache == null) {
+            cache = new LocalFileCache(StringUtils.isNotEmpty(cacheDirectory)
+                    ? Paths.get(cacheDirectory)
+                    : Paths.get(System.getProperty("java.io.tmpdir"), "tencentfs-cache", storageName),
+                    cacheMaxSize * 1024 * 1024, statistics);
+        } else if (!cacheEnabled) {
+            cache = null;
+        }
+        metadataCache = metadataCacheSize > 0
+                ? new ObjectMetadataCache(metadataCacheSize, metadataCacheTtl, metadataCacheNegativeTtl)
+                : null;
+        scheduleUploadSweep();
+    }
+
+    /**
+     * Schedules the sweeps of incomplete multipart uploads every {@link #uploadSweepInterval} minutes,
+     * replacing the previous schedule. Sweeps run on the scheduler thread, only their aborts use the request executor.
+     */
+    protected void scheduleUploadSweep() {
+        ScheduledFuture<?> previous = uploadSweep;
+        if (previous != null) {
+            previous.cancel(false);
+        }
+        if (uploadSweepInterval > 0) {
+            long maxAge = TimeUnit.HOURS.toMillis(uploadSweepAge);
+            int parallelism = uploadSweepParallelism;
+            uploadSweep = getScheduler().scheduleWithFixedDelay(() -> uploadSweeper.sweep(maxAge, parallelism),
+                    uploadSweepInterval, uploadSweepInterval, TimeUnit.MINUTES);
+        } else {
+            uploadSweep = null;
+        }
+    }
+
+    /**
+     * Creates the clients of the shards. Reads of a shard go to its replica in {@link #localRegion} if there is one.
+     */
+    protected ShardRouter createShardRouter(COSCredentials credentials) {
+        String readRegion = StringUtils.isNotEmpty(localRegion) ? localRegion : region;
+        List<ShardRouter.Shard> routedShards = new ArrayList<>(shards.size());
+        for (TencentFileStorageProperties.Shard shard : shards) {
+            CosClientHolder writeTarget = new CosClientHolder(
+                    createCosClient(credentials, createClientConfig(shard.getRegion(), shard.getEndpointUrl())),
+                    shard.getBucket());
+            CosClientHolder readTarget = writeTarget;
+            if (!Objects.equals(readRegion, shard.getRegion())) {
+                for (TencentFileStorageProperties.Replica replica : shard.getReplicas()) {
+                    if (Objects.equals(readRegion, replica.getRegion())) {
+                        readTarget = new CosClientHolder(
+                                createCosClient(credentials, createClientConfig(replica.getRegion(), replica.getEndpointUrl())),
+                                replica.getBucket());
+                        break;
+                    }
+                }
+            }
+            routedShards.add(new ShardRouter.Shard(shard.getId(), shard.getWeight(), writeTarget, readTarget));
+        }
+        return new ShardRouter(routedShards);
+    }
+
+    protected ClientConfig createClientConfig() {
+        return createClientConfig(region, endpointUrl);
+    }
+
+    protected ClientConfig createClientConfig(String regionName, @Nullable String endpointUrl) {
+        Region region = new Region(regionName);
         ClientConfig clientConfig= new ClientConfig(region);
         clientConfig.setHttpProtocol(HttpProtocol.https);
-        COSClient cosClient = new COSClient(cred, clientConfig);
-        clientReference.set( cosClient);
+        if (StringUtils.isNotEmpty(endpointUrl)) {
+            int schemeEnd = endpointUrl.indexOf("://");
+            if (schemeEnd >= 0) {
+                // a complete URL addresses a custom domain that serves the bucket
+                String scheme = endpointUrl.substring(0, schemeEnd);
+                String host = StringUtils.removeEnd(endpointUrl.substring(schemeEnd + 3), "/");
+                clientConfig.setHttpProtocol("http".equalsIgnoreCase(scheme) ? HttpProtocol.http : HttpProtocol.https);
+                clientConfig.setEndpointBuilder(new UserSpecifiedEndpointBuilder(host, host));
+            } else {
+                // a domain suffix such as cos.ap-beijing.myqcloud.com, the bucket name is prepended to it
+                clientConfig.setEndpointBuilder(new SuffixEndpointBuilder(endpointUrl));
+            }
+        }
+        clientConfig.setMaxConnectionsCount(maxConnections);
+        clientConfig.setConnectionTimeout(connectionTimeout);
+        clientConfig.setSocketTimeout(socketTimeout);
+        clientConfig.setConnectionRequestTimeout(connectionRequestTimeout);
+        clientConfig.setIdleConnectionAlive(idleConnectionAlive);
+        clientConfig.setMaxErrorRetry(maxErrorRetry);
+        return clientConfig;
     }
 
-    @Override
-    public String getStorageName() {
-        return storageName;
+    protected COSClient createCosClient(COSCredentials credentials, ClientConfig clientConfig) {
+        return new COSClient(credentials, clientConfig);
     }
 
-    protected String createFileKey(String fileName) {
-        return createDateDir() + "/" + createUuidFilename(fileName);
+    /**
+     * Takes a lease of the current client of the default bucket, which must be released when the operation
+     * is finished.
+     */
+    protected CosClientHolder acquireClient() {
+        while (true) {
+            CosClientHolder holder = getDefaultClient();
+            if (holder.acquire()) {
+                return holder;
+            }
+        }
     }
 
-    protected String createDateDir() {
-        Calendar cal = Calendar.getInstance();
-        cal.setTime(timeSource.currentTimestamp());
-        int year = cal.get(Calendar.YEAR);
-        int month = cal.get(Calendar.MONTH) + 1;
-        int day = cal.get(Calendar.DAY_OF_MONTH);
+    /**
+     * Takes a lease of the current client of the bucket that stores the key, which must be released when
+     * the operation is finished.
+     *
+     * @param read whether the operation only reads, so it can be served by a replica of the shard
+     */
+    protected CosClientHolder acquireClient(String key, boolean read) {
+        while (true) {
+            ShardRouter router = shardRouter;
+            ShardRouter.Shard shard = router != null ? router.getShard(key) : null;
+            CosClientHolder holder;
+            if (shard != null) {
+                holder = read ? shard.getReadTarget() : shard.getWriteTarget();
+            } else {
+                holder = getDefaultClient();
+            }
+            if (holder.acquire()) {
+                return holder;
+            }
+        }
+    }
 
-        return String.format("%d/%s/%s", year,
-                StringUtils.leftPad(String.valueOf(month), 2, '0'),
-                StringUtils.leftPad(String.valueOf(day), 2, '0'));
+    /**
+     * Takes leases of the clients of all buckets that receive uploads: the default bucket and the primary buckets
+     * of the shards. Each of them must be released when the operation is finished.
+     */
+    protected List<CosClientHolder> acquireUploadTargets() {
+        List<CosClientHolder> targets = new ArrayList<>();
+        targets.add(acquireClient());
+        ShardRouter router = shardRouter;
+        if (router != null) {
+            for (ShardRouter.Shard shard : router.getShards()) {
+                // a client replaced by a refresh is skipped, its bucket is swept by the next sweep
+                if (shard.getWriteTarget().acquire()) {
+                    targets.add(shard.getWriteTarget());
+                }
+            }
+        }
+        return targets;
     }
 
-    protected String createUuidFilename(String fileName) {
-        String extension = FilenameUtils.getExtension(fileName);
-        if (StringUtils.isNotEmpty(extension)) {
-            return UuidProvider.createUuid().toString() + "." + extension;
-        } else {
-            return UuidProvider.createUuid().toString();
+    private CosClientHolder getDefaultClient() {
+        CosClientHolder holder = clientReference.get();
+        if (holder == null) {
+            throw new IllegalStateException("COS client of storage " + storageName + " is not initialized");
         }
+        return holder;
     }
 
-    private String claimUploadId(String objectName) {
-        InitiateMultipartUploadRequest request = new InitiateMultipartUploadRequest(bucket, objectName);
-        InitiateMultipartUploadResult result = clientReference.get().initiateMultipartUpload(request);
-        return result.getUploadId();
+    /**
+     * Shuts down a replaced client once its requests in flight finish, or after {@link #clientDrainTimeout}
+     * seconds if some of them, such as an abandoned download stream, never finish.
+     */
+    protected void retireClient(CosClientHolder holder) {
+        holder.retire();
+        if (!holder.isShutdown()) {
+            getScheduler().schedule(holder::shutdownClient, clientDrainTimeout, TimeUnit.SECONDS);
+        }
+    }
+
+    protected ScheduledExecutorService getScheduler() {
+        ScheduledExecutorService executor = scheduler;
+        if (executor == null) {
+            synchronized (this) {
+                executor = scheduler;
+                if (executor == null) {
+                    checkNotShutDown();
+                    CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("tencentfs-" + storageName + "-scheduler-");
+                    threadFactory.setDaemon(true);
+                    executor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+                    scheduler = executor;
+                }
+            }
+        }
+        return executor;
     }
 
-    private void completeMultipartUpload(List<PartETag> partETags, String objectName, String uploadId) {
-        // Make part numbers in ascending order
-        Collections.sort(partETags, new Comparator<PartETag>() {
-            @Override
-            public int compare(PartETag p1, PartETag p2) {
-                return p1.getPartNumber() - p2.getPartNumber();
+    @PreDestroy
+    public void shutdown() {
+        CosClientHolder holder = clientReference.getAndSet(null);
+        if (holder != null) {
+            holder.retire();
+        }
+        ShardRouter router = shardRouter;
+        if (router != null) {
+            shardRouter = null;
+            for (ShardRouter.Shard shard : router.getShards()) {
+                shard.getWriteTarget().retire();
+                if (shard.getReadTarget() != shard.getWriteTarget()) {
+                    shard.getReadTarget().retire();
+                }
             }
-        });
-        log.info("Completing to upload multiparts\n");
-        CompleteMultipartUploadRequest completeMultipartUploadRequest =
-                new CompleteMultipartUploadRequest(bucket, objectName, uploadId, partETags);
-        clientReference.get().completeMultipartUpload(completeMultipartUploadRequest);
+        }
+        ExecutorService executor;
+        synchronized (this) {
+            shutDown = true;
+            executor = scheduler;
+            scheduler = null;
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            executor = uploadExecutor;
+            uploadExecutor = null;
+            if (executor != null) {
+                executor.shutdown();
+            }
+            executor = downloadExecutor;
+            downloadExecutor = null;
+            if (executor != null) {
+                executor.shutdown();
+            }
+            executor = requestExecutor;
+            requestExecutor = null;
+            if (executor != null) {
+                executor.shutdown();
+            }
+            executor = operationExecutor;
+            operationExecutor = null;
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
     }
 
-    private void listAllParts(String objectName, String uploadId) {
-        log.debug("Listing all parts......");
-        ListPartsRequest listPartsRequest = new ListPartsRequest(bucket, objectName, uploadId);
-        PartListing partListing = clientReference.get().listParts(listPartsRequest);
-        int partCount = partListing.getParts().size();
-        for (int i = 0; i < partCount; i++) {
-            PartSummary partSummary = partListing.getParts().get(i);
-            log.debug("\tPart#" + partSummary.getPartNumber() + ", ETag=" + partSummary.getETag());
+    private void checkNotShutDown() {
+        if (shutDown) {
+            throw new IllegalStateException("Storage " + storageName + " is shut down");
         }
-        log.debug("\n");
     }
 
-    @Override
-    public FileRef saveStream(String fileName, InputStream inputStream) {
-        String fileKey = createFileKey(fileName);
-        try {
-            byte[] data = IOUtils.toByteArray(inputStream);
-            COSClient client = clientReference.get();
-            int chunkSizeBytes = this.chunkSize * 1024;
-            List<PartETag> partETags = new ArrayList<>();
-
-            String uploadId = claimUploadId(fileKey);
-            ExecutorService executorService = Executors.newFixedThreadPool(5);
-            int partCount = 0;
-            for (int i = 0; i * chunkSizeBytes < data.length; i++) {
-                partCount++;
-                int partNumber = i + 1;
-                int endChunkPosition = Math.min(partNumber * chunkSizeBytes, data.length);
-                byte[] chunkBytes = getChunkBytes(data, i * chunkSizeBytes, endChunkPosition);
+    protected ExecutorService getUploadExecutor() {
+        ExecutorService executor = uploadExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = uploadExecutor;
+                if (executor == null) {
+                    checkNotShutDown();
+                    executor = createUploadExecutor();
+                    uploadExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
 
-                PartUploader partUploader =
-                        new PartUploader(client, partETags, chunkBytes, fileKey, bucket, chunkBytes.length, partNumber, uploadId);
-                executorService.execute(partUploader);
+    protected ExecutorService getDownloadExecutor() {
+        ExecutorService executor = downloadExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = downloadExecutor;
+                if (executor == null) {
+                    checkNotShutDown();
+                    executor = createThreadPool("download", downloadPoolSize, uploadQueueCapacity);
+                    downloadExecutor = executor;
+                }
             }
-            executorService.shutdown();
-            while (!executorService.isTerminated()) {
-                try {
-                    executorService.awaitTermination(10, TimeUnit.SECONDS);
-                } catch (InterruptedException e) {
-                    throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, "Uploading file to bos failed", e);
-                } finally {
-                    executorService.shutdownNow();
+        }
+        return executor;
+    }
+
+    /**
+     * Returns the executor of the storage for COS requests that do not transfer file content, such as copied parts,
+     * batch deletes and aborts of the upload sweeper.
+     */
+    protected ExecutorService getRequestExecutor() {
+        ExecutorService executor = requestExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = requestExecutor;
+                if (executor == null) {
+                    checkNotShutDown();
+                    executor = createThreadPool("request", requestPoolSize, uploadQueueCapacity);
+                    requestExecutor = executor;
                 }
             }
-            if (partETags.size() != partCount) {
-                throw new IllegalStateException("Upload multiparts fail due to some parts are not finished yet");
-            } else {
-                log.info("Succeed to complete multiparts into an object named " + fileKey + "\n");
+        }
+        return executor;
+    }
+
+    /**
+     * Returns the executor of the asynchronous operations of the storage, such as {@link #saveStreamAsync}.
+     * An operation runs for the whole transfer of a file, so it has its own pool that does not delay the requests
+     * of the {@link #getRequestExecutor() request executor}, and operations are rejected when its queue is full
+     * instead of running on the calling thread.
+     */
+    protected ExecutorService getOperationExecutor() {
+        ExecutorService executor = operationExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = operationExecutor;
+                if (executor == null) {
+                    checkNotShutDown();
+                    executor = createThreadPool("operation", requestPoolSize, uploadQueueCapacity,
+                            new ThreadPoolExecutor.AbortPolicy());
+                    operationExecutor = executor;
+                }
             }
+        }
+        return executor;
+    }
 
-            listAllParts(fileKey, uploadId);
-            completeMultipartUpload(partETags, fileKey, uploadId);
-            return new FileRef(getStorageName(), fileKey, fileName);
-        } catch (IOException e) {
-            String message = String.format("Could not save file %s.", fileName);
-            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, message);
+    /**
+     * Creates the executor shared by all uploads of the storage.
+     */
+    protected ExecutorService createUploadExecutor() {
+        if (uploadVirtualThreads) {
+            ExecutorService executor = createVirtualThreadExecutor();
+            if (executor != null) {
+                uploadPermits = new Semaphore(uploadPoolSize);
+                return executor;
+            }
+            log.warn("Virtual threads are not supported by the current JVM, using a platform thread pool for uploads");
         }
+        return createThreadPool("upload", uploadPoolSize, uploadQueueCapacity);
     }
 
-    protected byte[] getChunkBytes(byte[] data, int start, int end) {
-        byte[] chunkBytes = new byte[end - start];
-        System.arraycopy(data, start, chunkBytes, 0, end - start);
-        return chunkBytes;
+    /**
+     * Creates a bounded thread pool. Tasks are rejected to the calling thread when the queue is full,
+     * which slows down the caller instead of failing the transfer. Once the pool is shut down, tasks are
+     * rejected with an exception, so the futures of an operation in flight fail instead of never completing.
+     */
+    protected ExecutorService createThreadPool(String purpose, int poolSize, int queueCapacity) {
+        return createThreadPool(purpose, poolSize, queueCapacity, (task, pool) -> {
+            if (pool.isShutdown()) {
+                throw new RejectedExecutionException("Executor of storage " + storageName + " is shut down");
+            }
+            task.run();
+        });
     }
 
-    @Override
-    public InputStream openStream(FileRef reference) {
+    protected ExecutorService createThreadPool(String purpose, int poolSize, int queueCapacity,
+                                               RejectedExecutionHandler rejectionHandler) {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("tencentfs-" + storageName + "-" + purpose + "-");
+        threadFactory.setDaemon(true);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize,
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(queueCapacity), threadFactory, rejectionHandler);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    @Nullable
+    protected ExecutorService createVirtualThreadExecutor() {
         try {
-            COSClient client = clientReference.get();
-            COSObject object = client.getObject(new GetObjectRequest(bucket, reference.getPath()));
-            return object.getObjectContent();
-        } catch (Exception e) {
-            String message = String.format("Could not load file %s.", reference.getFileName());
-            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, message);
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    protected CompletableFuture<Void> submitPart(PartUploader partUploader) {
+        ExecutorService executor = getUploadExecutor();
+        Semaphore permits = uploadPermits;
+        if (permits == null) {
+            return CompletableFuture.runAsync(partUploader, executor);
         }
+        return CompletableFuture.runAsync(() -> {
+            permits.acquireUninterruptibly();
+            try {
+                partUploader.run();
+            } finally {
+                permits.release();
+            }
+        }, executor);
     }
 
     @Override
-    public void removeFile(FileRef reference) {
+    public String getStorageName() {
+        return storageName;
+    }
+
+    public TencentStorageStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Registers the meters of the storage in the registry and starts recording operations into them.
+     * The storage can be bound to several registries, each of them receives all measurements.
+     */
+    public void bindMetrics(MeterRegistry registry) {
+        synchronized (meterRegistry) {
+            if (meterRegistry.getRegistries().contains(registry)) {
+                return;
+            }
+            // meters of the composite are added to the registries bound later
+            meterRegistry.add(registry);
+            if (metrics == TencentFileStorageMetrics.NOOP) {
+                metrics = new TencentFileStorageMetrics(meterRegistry, this);
+            }
+        }
+    }
+
+    /**
+     * Runs a public operation of the storage and records its duration and failure in the metrics.
+     */
+    protected <T> T measure(String operation, Supplier<T> action) {
+        TencentFileStorageMetrics metrics = this.metrics;
+        long start = System.nanoTime();
         try {
-            COSClient client = clientReference.get();
-            DeleteObjectRequest request = new DeleteObjectRequest(bucket,reference.getPath());
-            client.deleteObject(request);
-        } catch (Exception e) {
-            String message = String.format("Could not delete file %s.", reference.getFileName());
-            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, message);
+            T result = action.get();
+            metrics.operationCompleted(operation, System.nanoTime() - start, null);
+            return result;
+        } catch (RuntimeException | Error e) {
+            metrics.operationCompleted(operation, System.nanoTime() - start, e);
+            throw e;
         }
     }
 
-    @Override
-    public boolean fileExists(FileRef reference) {
-        COSClient client = clientReference.get();
-        ListObjectsRequest listObjectsRequest = new ListObjectsRequest();
-        listObjectsRequest.setBucketName(bucket);
-        listObjectsRequest.setPrefix(reference.getPath());
-        listObjectsRequest.setMaxKeys(1);
-        ObjectListing objectListing = client.listObjects(listObjectsRequest);
-        List<COSObjectSummary> summaries = objectListing.getObjectSummaries();
-        return summaries.size() > 0;
+    /**
+     * Creates the key of a new file. If shards are configured, the key starts with the identifier
+     * of the shard that stores the file.
+     */
+    protected String createFileKey(String fileName) {
+        String uuid = UuidProvider.createUuid().toString();
+        StringBuilder key = new StringBuilder(64);
+        if (keyLayout == ObjectKeyLayout.HASHED_DATE) {
+            key.append(uuid, 0, 2).append('/');
+        }
+        if (keyLayout != ObjectKeyLayout.UUID_FIRST) {
+            key.append(createDateDir()).append('/');
+        }
+        appendUuidFilename(key, uuid, fileName);
+        String fileKey = key.toString();
+        ShardRouter router = shardRouter;
+        return router != null ? router.selectShard(fileKey).getId() + "/" + fileKey : fileKey;
     }
 
-    public void setSecretId(String secretId) {
-        this.secretId = secretId;
+    /**
+     * Returns the {@code yyyy/MM/dd} directory of the current day in the default time zone.
+     */
+    protected String createDateDir() {
+        long now = timeSource.currentTimestamp().getTime();
+        DateDir current = dateDir;
+        if (current == null || now < current.start || now >= current.end) {
+            ZoneId zone = ZoneId.systemDefault();
+            LocalDate date = Instant.ofEpochMilli(now).atZone(zone).toLocalDate();
+            current = new DateDir(date, zone);
+            dateDir = current;
+        }
+        return current.path;
     }
 
-    public void setSecretKey(String secretKey) {
-        this.secretKey = secretKey;
+    protected String createUuidFilename(String fileName) {
+        StringBuilder filename = new StringBuilder(48);
+        appendUuidFilename(filename, UuidProvider.createUuid().toString(), fileName);
+        return filename.toString();
     }
 
-    public void setRegion(String region) {
-        this.region = region;
+    private void appendUuidFilename(StringBuilder key, String uuid, String fileName) {
+        key.append(uuid);
+        int extensionIndex = FilenameUtils.indexOfExtension(fileName);
+        if (extensionIndex >= 0 && extensionIndex < fileName.length() - 1) {
+            key.append(fileName, extensionIndex, fileName.length());
+        }
     }
 
-    public void setBucket(String bucket) {
-        this.bucket = bucket;
+    private static class DateDir {
+
+        final String path;
+        final long start;
+        final long end;
+
+        DateDir(LocalDate date, ZoneId zone) {
+            int month = date.getMonthValue();
+            int day = date.getDayOfMonth();
+            path = date.getYear() + (month < 10 ? "/0" : "/") + month + (day < 10 ? "/0" : "/") + day;
+            start = date.atStartOfDay(zone).toInstant().toEpochMilli();
+            end = date.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        }
     }
 
-    public void setChunkSize(int chunkSize) {
-        this.chunkSize = chunkSize;
+    private String claimUploadId(CosClientHolder target, String objectName) {
+        InitiateMultipartUploadRequest request = new InitiateMultipartUploadRequest(target.getBucket(), objectName);
+        InitiateMultipartUploadResult result = target.getClient().initiateMultipartUpload(request);
+        uploadStarted(target, objectName, result.getUploadId());
+        return result.getUploadId();
     }
 
-    public void setEndpointUrl(@Nullable String endpointUrl) {
-        this.endpointUrl = endpointUrl;
+    /**
+     * Registers a multipart upload in progress in this process, so it is not aborted by sweeps.
+     */
+    protected void uploadStarted(CosClientHolder target, String objectName, String uploadId) {
+        uploadsInProgress.put(uploadId, new MultipartUploadInfo(target.getBucket(), objectName, uploadId,
+                new Date(), true));
+    }
+
+    protected void uploadFinished(String uploadId) {
+        uploadsInProgress.remove(uploadId);
+    }
+
+    protected boolean isUploadInProgress(String uploadId) {
+        return uploadsInProgress.containsKey(uploadId);
+    }
+
+    private CompleteMultipartUploadResult completeMultipartUpload(CosClientHolder target, PartETag[] partETags, int partCount,
+                                                                  String objectName, String uploadId) {
+        // slots are indexed by part number, so the list is already in ascending order
+        List<PartETag> completedParts = Arrays.asList(Arrays.copyOf(partETags, partCount));
+        log.info("Completing to upload multiparts\n");
+        CompleteMultipartUploadRequest completeMultipartUploadRequest =
+                new CompleteMultipartUploadRequest(target.getBucket(), objectName, uploadId, completedParts);
+        try {
+            return target.getClient().completeMultipartUpload(completeMultipartUploadRequest);
+        } finally {
+            uploadFinished(uploadId);
+        }
+    }
+
+    /**
+     * Compares the CRC64 of the sent content with the one reported by COS for the stored object
+     * and removes the object if they differ.
+     */
+    private void verifyObjectChecksum(CosClientHolder target, String fileKey, long checksum, @Nullable String reported) {
+        if (!Crc64.isReported(reported)) {
+            statistics.unverifiedChecksums.increment();
+            log.debug("COS did not report the CRC64 of {}, the object is not verified", fileKey);
+            return;
+        }
+        if (Crc64.matches(checksum, reported)) {
+            return;
+        }
+        statistics.checksumMismatches.increment();
+        try {
+            target.getClient().deleteObject(new DeleteObjectRequest(target.getBucket(), fileKey));
+        } catch (Exception e) {
+            log.warn("Cannot remove corrupted object {}", fileKey, e);
+        }
+        throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION,
+                String.format("CRC64 of %s stored by COS does not match the sent data", fileKey));
+    }
+
+    /**
+     * Lists the parts stored by COS and compares them with the uploaded ones. Costs at least one
+     * additional request, so it is only called when {@link #verifyParts} is enabled.
+     */
+    private void verifyParts(CosClientHolder target, PartETag[] partETags, int partCount,
+                             String objectName, String uploadId) {
+        log.debug("Listing all parts......");
+        COSClient client = target.getClient();
+        ListPartsRequest listPartsRequest = new ListPartsRequest(target.getBucket(), objectName, uploadId);
+        int listedCount = 0;
+        PartListing partListing;
+        do {
+            partListing = client.listParts(listPartsRequest);
+            for (PartSummary partSummary : partListing.getParts()) {
+                log.debug("\tPart#" + partSummary.getPartNumber() + ", ETag=" + partSummary.getETag());
+                int index = partSummary.getPartNumber() - 1;
+                if (index >= partCount || !partETags[index].getETag().equals(partSummary.getETag())) {
+                    throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION,
+                            String.format("Part %d of %s does not match the uploaded data", partSummary.getPartNumber(), objectName));
+                }
+                listedCount++;
+            }
+            listPartsRequest.setPartNumberMarker(partListing.getNextPartNumberMarker());
+        } while (partListing.isTruncated());
+        if (listedCount != partCount) {
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION,
+                    String.format("COS has %d of %d parts of %s", listedCount, partCount, objectName));
+        }
+    }
+
+    @Override
+    public FileRef saveStream(String fileName, InputStream inputStream) {
+        return saveStream(fileName, inputStream, null);
+    }
+
+    /**
+     * Saves the stream like {@link #saveStream(String, InputStream)}, but keeps the state of a multipart upload
+     * under the given token until the upload is completed. If a previous call with the same token failed,
+     * the parts that are already stored in COS are read from the stream and skipped instead of being sent again.
+     * The stream must therefore provide the same content from the beginning.
+     *
+     * @param uploadToken token identifying the content across attempts, {@code null} for a non-resumable upload
+     */
+    public FileRef saveStream(String fileName, InputStream inputStream, @Nullable String uploadToken) {
+        return measure("save", () -> {
+            statistics.activeUploads.increment();
+            try {
+                if (uploadToken != null) {
+                    FileRef resumed = resumeUpload(fileName, inputStream, uploadToken);
+                    if (resumed != null) {
+                        return resumed;
+                    }
+                }
+                String fileKey = createFileKey(fileName);
+                CosClientHolder target = acquireClient(fileKey, false);
+                try {
+                    return saveStream(target, fileKey, fileName, inputStream, uploadToken);
+                } finally {
+                    target.release();
+                }
+            } finally {
+                statistics.activeUploads.decrement();
+            }
+        });
+    }
+
+    /**
+     * Saves the stream like {@link #saveStream(String, InputStream)} on the shared executor of the storage.
+     * The stream is read by the executor thread and must not be closed before the future completes.
+     */
+    public CompletableFuture<FileRef> saveStreamAsync(String fileName, InputStream inputStream) {
+        return saveStreamAsync(fileName, inputStream, null);
+    }
+
+    /**
+     * Saves the stream like {@link #saveStream(String, InputStream, String)} on the shared executor of the storage.
+     */
+    public CompletableFuture<FileRef> saveStreamAsync(String fileName, InputStream inputStream,
+                                                      @Nullable String uploadToken) {
+        return supplyAsync(() -> saveStream(fileName, inputStream, uploadToken));
+    }
+
+    /**
+     * Saves the content of a local file. Parts are read from regions of the file by the COS client when they are
+     * sent, so the content is not buffered on heap, and the part size and the number of parts sent at the same
+     * time are chosen from the file size up front. The file must not change until the method returns.
+     */
+    public FileRef saveFile(String fileName, Path file) {
+        return measure("save", () -> {
+            statistics.activeUploads.increment();
+            try {
+                String fileKey = createFileKey(fileName);
+                CosClientHolder target = acquireClient(fileKey, false);
+                try {
+                    return saveFile(target, fileKey, fileName, file);
+                } finally {
+                    target.release();
+                }
+            } finally {
+                statistics.activeUploads.decrement();
+            }
+        });
+    }
+
+    public FileRef saveFile(String fileName, File file) {
+        return saveFile(fileName, file.toPath());
+    }
+
+    public CompletableFuture<FileRef> saveFileAsync(String fileName, Path file) {
+        return supplyAsync(() -> saveFile(fileName, file));
+    }
+
+    /**
+     * Uploads a file for each input of the iterator, with at most {@link #bulkTransferWindow} uploads in flight on
+     * the {@link #getOperationExecutor() operation executor} of the storage, or on the calling thread if its queue
+     * is full, and passes the result of each file to the consumer as soon as it is uploaded.
+     * Results are passed in the order the uploads complete, on the calling thread. The content of a file is opened
+     * right before it is uploaded and closed afterwards, so only the files in flight are open and read.
+     * A failed file does not stop the other ones; if the consumer throws, the files in flight are still uploaded
+     * but no more inputs are taken.
+     *
+     * @param fileName returns the name of the file of an input
+     * @param content  opens the content of the file of an input
+     * @param results  receives the {@link FileRef} or the error of each input
+     */
+    public <T> void saveStreams(Iterator<? extends T> inputs, Function<? super T, String> fileName,
+                                Function<? super T, InputStream> content,
+                                Consumer<? super BulkTransferResult<T, FileRef>> results) {
+        runBulk(inputs, input -> supplyBulk(() -> {
+            InputStream inputStream = content.apply(input);
+            try {
+                return saveStream(fileName.apply(input), inputStream);
+            } finally {
+                try {
+                    inputStream.close();
+                } catch (IOException e) {
+                    log.debug("Cannot close the content of {}", input, e);
+                }
+            }
+        }), results);
+    }
+
+    /**
+     * Opens the files of the iterator like {@link #openStream(FileRef)}, with at most {@link #bulkTransferWindow}
+     * files being opened or waiting for the consumer, and passes each stream to the consumer as soon as it is open.
+     * Results are passed in the order the requests complete, on the calling thread. The consumer must close the
+     * streams it receives; streams that are not passed to it because it threw are closed by the storage.
+     *
+     * @param results receives the stream or the error of each file
+     */
+    public void openStreams(Iterator<? extends FileRef> references,
+                            Consumer<? super BulkTransferResult<FileRef, InputStream>> results) {
+        runBulk(references, reference -> supplyBulk(() -> openStream(reference)), results);
+    }
+
+    protected <T, R> void runBulk(Iterator<? extends T> inputs, Function<T, CompletableFuture<R>> operation,
+                                  Consumer<? super BulkTransferResult<T, R>> results) {
+        try {
+            new BulkTransferPipeline<>(bulkTransferWindow, operation).run(inputs, results);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, "Bulk transfer interrupted", e);
+        }
+    }
+
+    protected FileRef saveFile(CosClientHolder target, String fileKey, String fileName, Path file) {
+        long size;
+        try {
+            size = Files.size(file);
+        } catch (IOException e) {
+            String message = String.format("Could not save file %s.", fileName);
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, message, e);
+        }
+        boolean verifyChecksums = verifyUploadChecksums;
+        if (size < chunkSize * 1024L && size < multipartThreshold * 1024L) {
+            TransferLimiter limiter = this.transferLimiter;
+            Long checksum = null;
+            if (verifyChecksums) {
+                try {
+                    checksum = Crc64.ofFile(file, 0, size);
+                } catch (IOException e) {
+                    String message = String.format("Could not save file %s.", fileName);
+                    throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, message, e);
+                }
+            }
+            awaitTransfer(limiter, size);
+            String reportedChecksum;
+            try {
+                PutObjectResult result = target.getClient().putObject(new PutObjectRequest(target.getBucket(), fileKey, file.toFile()));
+                limiter.requestSucceeded();
+                metrics.objectUploaded(size);
+                reportedChecksum = result.getCrc64Ecma();
+            } catch (Exception e) {
+                limiter.requestFailed(e);
+                throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, "Uploading file to cos failed", e);
+            }
+            if (checksum != null) {
+                verifyObjectChecksum(target, fileKey, checksum, reportedChecksum);
+            }
+            statistics.singlePutUploads.increment();
+            return new FileRef(getStorageName(), fileKey, fileName);
+        }
+
+        UploadTuner.Plan plan = uploadTuner.plan(size);
+        long partSize = Math.max(plan.getPartSize(), (size + MAX_PART_COUNT - 1) / MAX_PART_COUNT);
+        int partCount = (int) ((size + partSize - 1) / partSize);
+        metrics.uploadPlanned(plan);
+        long started = System.nanoTime();
+        PartETag[] partETags = new PartETag[partCount];
+        // every part computes the CRC64 of its file region, they are combined into the checksum of the object
+        long[] partChecksums = verifyChecksums ? new long[partCount] : null;
+        TransferPriority priority = TransferPriority.current();
+        // the number of parts in flight follows the plan like for streams, which records it in the metrics
+        Semaphore partPermits = new Semaphore(Math.max(1, Math.min(partCount, plan.getParallelism())));
+        List<CompletableFuture<Void>> partFutures = new ArrayList<>(partCount);
+        CompletableFuture<Void> failure = new CompletableFuture<>();
+
+        String uploadId = claimUploadId(target, fileKey);
+        CompleteMultipartUploadResult completeResult;
+        try {
+            for (int partIndex = 0; partIndex < partCount && !failure.isDone(); partIndex++) {
+                long offset = partIndex * partSize;
+                partPermits.acquire();
+                PartUploader partUploader = new PartUploader(target.getClient(), partETags, file.toFile(), offset,
+                        fileKey, target.getBucket(), Math.min(partSize, size - offset), partIndex + 1, uploadId,
+                        partChecksums, retryPolicy, statistics, metrics, uploadTuner, transferLimiter, priority,
+                        partPermits::release);
+                partFutures.add(submitPart(partUploader).whenComplete((result, error) -> {
+                    if (error != null) {
+                        failure.completeExceptionally(error);
+                    }
+                }));
+            }
+            CompletableFuture.allOf(partFutures.toArray(new CompletableFuture[0])).get();
+            if (verifyParts) {
+                verifyParts(target, partETags, partCount, fileKey, uploadId);
+            }
+            completeResult = completeMultipartUpload(target, partETags, partCount, fileKey, uploadId);
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            CompletableFuture.allOf(partFutures.toArray(new CompletableFuture[0]))
+                    .handle((result, error) -> null)
+                    .join();
+            abortMultipartUpload(target, fileKey, uploadId);
+            throw toFileStorageException(e, fileName);
+        }
+        if (partChecksums != null) {
+            long objectChecksum = 0;
+            for (int partIndex = 0; partIndex < partCount; partIndex++) {
+                long offset = partIndex * partSize;
+                objectChecksum = Crc64.combine(objectChecksum, partChecksums[partIndex], Math.min(partSize, size - offset));
+            }
+            verifyObjectChecksum(target, fileKey, objectChecksum, completeResult.getCrc64Ecma());
+        }
+        metrics.multipartUploadCompleted(plan, size, System.nanoTime() - started);
+        statistics.multipartUploads.increment();
+        return new FileRef(getStorageName(), fileKey, fileName);
+    }
+
+    /**
+     * Runs an operation on the {@link #getOperationExecutor() operation executor} of the storage. The synchronous
+     * methods do not use it and run on the calling thread, so they never wait for a free thread of the pool.
+     * If the queue of the executor is full or the storage is shut down, the returned future fails
+     * with a {@link RejectedExecutionException} or an {@link IllegalStateException}; nothing is thrown to the caller.
+     */
+    protected <T> CompletableFuture<T> supplyAsync(Supplier<T> action) {
+        TransferPriority priority = TransferPriority.current();
+        try {
+            return CompletableFuture.supplyAsync(() -> priority.call(action), getOperationExecutor());
+        } catch (RejectedExecutionException | IllegalStateException e) {
+            return failedFuture(e);
+        }
+    }
+
+    /**
+     * Runs an operation of a bulk transfer like {@link #supplyAsync(Supplier)}, but on the calling thread if the
+     * queue of the executor is full. The caller waits for the bulk transfer anyway, so it slows down instead of
+     * failing the file.
+     */
+    protected <T> CompletableFuture<T> supplyBulk(Supplier<T> action) {
+        TransferPriority priority = TransferPriority.current();
+        try {
+            return CompletableFuture.supplyAsync(() -> priority.call(action), getOperationExecutor());
+        } catch (RejectedExecutionException e) {
+            try {
+                return CompletableFuture.completedFuture(action.get());
+            } catch (RuntimeException actionError) {
+                return failedFuture(actionError);
+            }
+        } catch (IllegalStateException e) {
+            return failedFuture(e);
+        }
+    }
+
+    private static <T> CompletableFuture<T> failedFuture(Throwable error) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(error);
+        return future;
+    }
+
+    /**
+     * Waits until the transfer limits of the storage allow a request that sends {@code uploadBytes}.
+     */
+    protected void awaitTransfer(TransferLimiter limiter, long uploadBytes) {
+        TransferPriority priority = TransferPriority.current();
+        try {
+            limiter.acquireUpload(uploadBytes, priority);
+            limiter.acquireRequest(priority);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, "Waiting for the transfer limits interrupted", e);
+        }
+    }
+
+    /**
+     * Continues the upload persisted under the token, returns {@code null} if there is no such upload
+     * or COS no longer knows it.
+     */
+    @Nullable
+    protected FileRef resumeUpload(String fileName, InputStream inputStream, String uploadToken) {
+        UploadState state = uploadStateRepository.load(uploadToken);
+        if (state == null) {
+            return null;
+        }
+        CosClientHolder target = acquireClient(state.getFileKey(), false);
+        try {
+            PartETag[] partETags = listStoredParts(target, state);
+            if (partETags == null) {
+                uploadStateRepository.delete(uploadToken);
+                return null;
+            }
+            log.info("Resuming upload of {} with {} stored parts", state.getFileKey(),
+                    Arrays.stream(partETags).filter(Objects::nonNull).count());
+            uploadStarted(target, state.getFileKey(), state.getUploadId());
+            statistics.resumedUploads.increment();
+            uploadParts(target, fileName, state.getFileKey(), state.getUploadId(), inputStream,
+                    null, 0, null, uploadTuner.planFor(state.getPartSize()), partETags, state);
+            statistics.multipartUploads.increment();
+            return new FileRef(getStorageName(), state.getFileKey(), fileName);
+        } finally {
+            target.release();
+        }
+    }
+
+    protected FileRef saveStream(CosClientHolder target, String fileKey, String fileName, InputStream inputStream,
+                                 @Nullable String uploadToken) {
+        long contentLength = estimateContentLength(inputStream);
+        UploadTuner.Plan plan = uploadTuner.plan(contentLength);
+        PartBufferPool bufferPool = getBufferPool(plan.getPartSize());
+        Crc64 firstChecksum = verifyUploadChecksums ? new Crc64() : null;
+        // the beginning of the content is read into a small buffer, so small files do not take a part buffer
+        int headSize = contentLength >= 0 && contentLength < READ_BLOCK_SIZE ? (int) contentLength + 1 : READ_BLOCK_SIZE;
+        byte[] head = new byte[Math.min(headSize, plan.getPartSize())];
+        byte[] firstBuffer = null;
+        int firstLength;
+        try {
+            firstLength = readPart(inputStream, head, 0, firstChecksum);
+            if (firstLength < head.length && firstLength < multipartThreshold * 1024L) {
+                putObject(target, fileKey, head, firstLength, firstChecksum != null ? firstChecksum.getValue() : null);
+                statistics.singlePutUploads.increment();
+                log.debug("Uploaded {} ({} bytes) with a single PUT", fileKey, firstLength);
+                return new FileRef(getStorageName(), fileKey, fileName);
+            }
+            firstBuffer = bufferPool.acquire();
+            System.arraycopy(head, 0, firstBuffer, 0, firstLength);
+            firstLength = readPart(inputStream, firstBuffer, firstLength, firstChecksum);
+        } catch (IOException e) {
+            if (firstBuffer != null) {
+                bufferPool.release(firstBuffer);
+            }
+            String message = String.format("Could not save file %s.", fileName);
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, message, e);
+        }
+        if (firstLength < firstBuffer.length && firstLength < multipartThreshold * 1024L) {
+            try {
+                putObject(target, fileKey, firstBuffer, firstLength, firstChecksum != null ? firstChecksum.getValue() : null);
+            } finally {
+                bufferPool.release(firstBuffer);
+            }
+            statistics.singlePutUploads.increment();
+            log.debug("Uploaded {} ({} bytes) with a single PUT", fileKey, firstLength);
+            return new FileRef(getStorageName(), fileKey, fileName);
+        }
+
+        String uploadId = null;
+        UploadState state = null;
+        try {
+            uploadId = claimUploadId(target, fileKey);
+            if (uploadToken != null) {
+                state = new UploadState(uploadToken, fileKey, uploadId, bufferPool.getBufferSize());
+                uploadStateRepository.save(state);
+            }
+        } catch (RuntimeException e) {
+            bufferPool.release(firstBuffer);
+            if (uploadId != null) {
+                abortMultipartUpload(target, fileKey, uploadId);
+            }
+            throw e;
+        }
+        uploadParts(target, fileName, fileKey, uploadId, inputStream, firstBuffer, firstLength, firstChecksum,
+                plan, new PartETag[MAX_PART_COUNT], state);
+        statistics.multipartUploads.increment();
+        return new FileRef(getStorageName(), fileKey, fileName);
+    }
+
+    /**
+     * Returns the number of bytes left in a stream of a byte array or a file, -1 for other streams.
+     */
+    protected long estimateContentLength(InputStream inputStream) {
+        try {
+            if (inputStream instanceof ByteArrayInputStream) {
+                return inputStream.available();
+            }
+            if (inputStream instanceof FileInputStream) {
+                FileChannel channel = ((FileInputStream) inputStream).getChannel();
+                return Math.max(0, channel.size() - channel.position());
+            }
+        } catch (IOException e) {
+            log.debug("Cannot determine the length of the content", e);
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the pool of part buffers of the given size, the chunk size is served by {@link #bufferPool}.
+     * Pools of other sizes keep at most the heap of {@code uploadParallelism} default parts idle.
+     */
+    protected PartBufferPool getBufferPool(int bufferSize) {
+        PartBufferPool defaultPool = this.bufferPool;
+        if (defaultPool.getBufferSize() == bufferSize) {
+            return defaultPool;
+        }
+        return partBufferPools.computeIfAbsent(bufferSize, size -> new PartBufferPool(size,
+                (int) Math.max(1, (long) defaultPool.getBufferSize() * uploadParallelism / size)));
+    }
+
+    /**
+     * Fills the buffer like {@link IOUtils#read(InputStream, byte[])} and adds every block to the checksum
+     * as soon as it is read, while it is still in the CPU cache, so the content is not traversed again.
+     */
+    protected int readPart(InputStream inputStream, byte[] buffer, @Nullable Crc64 checksum) throws IOException {
+        return readPart(inputStream, buffer, 0, checksum);
+    }
+
+    /**
+     * @deprecated parts are read from the stream into pooled buffers instead of being copied out of the whole
+     * content, the storage no longer calls this method
+     */
+    @Deprecated
+    protected byte[] getChunkBytes(byte[] data, int start, int end) {
+        return Arrays.copyOfRange(data, start, end);
+    }
+
+    /**
+     * Fills the rest of a buffer that already holds {@code length} bytes, returns the length of its content.
+     */
+    protected int readPart(InputStream inputStream, byte[] buffer, int length, @Nullable Crc64 checksum) throws IOException {
+        while (length < buffer.length) {
+            int count = inputStream.read(buffer, length, Math.min(buffer.length - length, READ_BLOCK_SIZE));
+            if (count == -1) {
+                break;
+            }
+            if (checksum != null) {
+                checksum.update(buffer, length, count);
+            }
+            length += count;
+        }
+        return length;
+    }
+
+    /**
+     * @param checksum CRC64 of the content, compared with the one of the stored object if not {@code null}
+     */
+    protected void putObject(CosClientHolder target, String fileKey, byte[] data, int length, @Nullable Long checksum) {
+        TransferLimiter limiter = this.transferLimiter;
+        awaitTransfer(limiter, length);
+        String reportedChecksum;
+        try {
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentLength(length);
+            PutObjectRequest request =
+                    new PutObjectRequest(target.getBucket(), fileKey, new ByteArrayInputStream(data, 0, length), metadata);
+            PutObjectResult result = target.getClient().putObject(request);
+            limiter.requestSucceeded();
+            metrics.objectUploaded(length);
+            reportedChecksum = result.getCrc64Ecma();
+        } catch (Exception e) {
+            limiter.requestFailed(e);
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, "Uploading file to cos failed", e);
+        }
+        if (checksum != null) {
+            verifyObjectChecksum(target, fileKey, checksum, reportedChecksum);
+        }
+    }
+
+    /**
+     * Reads the content part by part and sends the parts whose slot in {@code partETags} is empty,
+     * the other ones are already stored in COS and are skipped.
+     * <p>
+     * If the first part is already read, it is passed in {@code firstBuffer}, which is taken from the buffer
+     * pool and released once the part is sent. If the upload fails, it is aborted unless it is resumable.
+     * <p>
+     * If checksums are verified, the CRC64 of every part is computed while its buffer is filled and compared with
+     * the one reported by COS for the part, and the combined CRC64 of the parts with the one of the completed object.
+     *
+     * @param firstChecksum CRC64 of the first part if it is already read and checksums are verified
+     * @param plan          part size and number of parts in flight, the part size matches the first buffer
+     * @param state         state of a resumable upload or {@code null}
+     */
+    protected void uploadParts(CosClientHolder target, String fileName, String fileKey, String uploadId,
+                               InputStream inputStream, @Nullable byte[] firstBuffer, int firstLength,
+                               @Nullable Crc64 firstChecksum, UploadTuner.Plan plan, PartETag[] partETags,
+                               @Nullable UploadState state) {
+        COSClient client = target.getClient();
+        PartBufferPool bufferPool = getBufferPool(plan.getPartSize());
+        RetryPolicy retryPolicy = this.retryPolicy;
+        TransferLimiter limiter = this.transferLimiter;
+        UploadTuner tuner = this.uploadTuner;
+        TransferPriority priority = TransferPriority.current();
+        metrics.uploadPlanned(plan);
+        long started = System.nanoTime();
+        long uploadedBytes = 0;
+        // the first buffer holds one of the permits
+        int parallelism = plan.getParallelism();
+        Semaphore partPermits = new Semaphore(firstBuffer != null ? parallelism - 1 : parallelism);
+        List<CompletableFuture<Void>> partFutures = new ArrayList<>();
+        CompletableFuture<Void> failure = new CompletableFuture<>();
+
+        boolean verifyChecksums = verifyUploadChecksums;
+        // CRC64 of the parts read so far, unknown if parts stored by an interrupted upload are skipped
+        long objectChecksum = 0;
+        boolean objectChecksumKnown = verifyChecksums;
+        CompleteMultipartUploadResult completeResult;
+
+        int partCount = 0;
+        byte[] pendingBuffer = firstBuffer;
+        int pendingLength = firstLength;
+        try {
+            while (true) {
+                if (partCount == MAX_PART_COUNT) {
+                    if (inputStream.read() == -1) {
+                        break;
+                    }
+                    throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION,
+                            String.format("File %s has more than %d parts, increase the chunk size", fileName, MAX_PART_COUNT));
+                }
+                if (pendingBuffer == null && partETags[partCount] != null) {
+                    partCount++;
+                    objectChecksumKnown = false;
+                    long skipped = IOUtils.skip(inputStream, bufferPool.getBufferSize());
+                    uploadedBytes += skipped;
+                    if (skipped < bufferPool.getBufferSize()) {
+                        break;
+                    }
+                    continue;
+                }
+
+                byte[] buffer;
+                int length;
+                Crc64 partChecksum;
+                if (pendingBuffer != null) {
+                    buffer = pendingBuffer;
+                    length = pendingLength;
+                    partChecksum = firstChecksum;
+                    pendingBuffer = null;
+                } else {
+                    if (failure.isDone()) {
+                        break;
+                    }
+                    partPermits.acquire();
+                    buffer = bufferPool.acquire();
+                    partChecksum = verifyChecksums ? new Crc64() : null;
+                    try {
+                        length = readPart(inputStream, buffer, partChecksum);
+                    } catch (IOException e) {
+                        bufferPool.release(buffer);
+                        partPermits.release();
+                        throw e;
+                    }
+                }
+                Runnable releaseCallback = () -> {
+                    bufferPool.release(buffer);
+                    partPermits.release();
+                };
+                if (length == 0 && partCount > 0) {
+                    releaseCallback.run();
+                    break;
+                }
+                partCount++;
+                uploadedBytes += length;
+                Long checksum = null;
+                if (partChecksum != null) {
+                    checksum = partChecksum.getValue();
+                    objectChecksum = Crc64.combine(objectChecksum, checksum, length);
+                } else {
+                    objectChecksumKnown = false;
+                }
+                PartUploader partUploader = new PartUploader(client, partETags, buffer, fileKey, target.getBucket(), length,
+                        partCount, uploadId, checksum, retryPolicy, statistics, metrics, tuner, limiter, priority, releaseCallback);
+                CompletableFuture<Void> partFuture = submitPart(partUploader).whenComplete((result, error) -> {
+                    if (error != null) {
+                        failure.completeExceptionally(error);
+                    }
+                });
+                partFutures.add(partFuture);
+                if (length < buffer.length) {
+                    break;
+                }
+            }
+            CompletableFuture.allOf(partFutures.toArray(new CompletableFuture[0])).get();
+            log.info("Succeed to complete multiparts into an object named " + fileKey + "\n");
+
+            if (verifyParts) {
+                verifyParts(target, partETags, partCount, fileKey, uploadId);
+            }
+            completeResult = completeMultipartUpload(target, partETags, partCount, fileKey, uploadId);
+            if (state != null) {
+                uploadStateRepository.delete(state.getToken());
+            }
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            // let the parts in flight finish before the upload is aborted or left for resuming
+            CompletableFuture.allOf(partFutures.toArray(new CompletableFuture[0]))
+                    .handle((result, error) -> null)
+                    .join();
+            if (state == null) {
+                abortMultipartUpload(target, fileKey, uploadId);
+            } else {
+                uploadFinished(uploadId);
+                log.warn("Upload of {} failed, it can be resumed with token {}", fileKey, state.getToken());
+            }
+            throw toFileStorageException(e, fileName);
+        }
+        if (objectChecksumKnown) {
+            verifyObjectChecksum(target, fileKey, objectChecksum, completeResult.getCrc64Ecma());
+        }
+        metrics.multipartUploadCompleted(plan, uploadedBytes, System.nanoTime() - started);
+    }
+
+    protected void abortMultipartUpload(CosClientHolder target, String fileKey, String uploadId) {
+        try {
+            target.getClient().abortMultipartUpload(new AbortMultipartUploadRequest(target.getBucket(), fileKey, uploadId));
+            statistics.abortedUploads.increment();
+            log.info("Aborted multipart upload {} of {}", uploadId, fileKey);
+        } catch (Exception e) {
+            log.warn("Cannot abort multipart upload {} of {}", uploadId, fileKey, e);
+        } finally {
+            uploadFinished(uploadId);
+        }
+    }
+
+    /**
+     * Lists the incomplete multipart uploads of the default bucket and of the primary buckets of the shards,
+     * including the ones in progress in this process.
+     */
+    public List<MultipartUploadInfo> listMultipartUploads() {
+        try {
+            return uploadSweeper.listUploads();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, "Listing multipart uploads interrupted", e);
+        }
+    }
+
+    /**
+     * Returns the multipart uploads that are in progress in this process.
+     */
+    public Collection<MultipartUploadInfo> getUploadsInProgress() {
+        return Collections.unmodifiableCollection(uploadsInProgress.values());
+    }
+
+    /**
+     * Aborts an incomplete multipart upload of the bucket that stores the key. Parts still being sent by an upload
+     * in progress fail, which fails the upload. A persisted state of the upload is deleted.
+     */
+    public void abortMultipartUpload(String fileKey, String uploadId) {
+        CosClientHolder target = acquireClient(fileKey, false);
+        try {
+            target.getClient().abortMultipartUpload(new AbortMultipartUploadRequest(target.getBucket(), fileKey, uploadId));
+            statistics.abortedUploads.increment();
+            uploadStateRepository.deleteUploads(Collections.singleton(uploadId));
+            log.info("Aborted multipart upload {} of {}", uploadId, fileKey);
+        } catch (Exception e) {
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION,
+                    String.format("Could not abort multipart upload %s of %s", uploadId, fileKey), e);
+        } finally {
+            target.release();
+        }
+    }
+
+    /**
+     * Aborts the incomplete multipart uploads initiated at least {@link #uploadSweepAge} hours ago that are not
+     * in progress in this process, without waiting for the next scheduled sweep.
+     *
+     * @return number of aborted uploads, -1 if a sweep is already running
+     */
+    public int sweepMultipartUploads() {
+        return uploadSweeper.sweep(TimeUnit.HOURS.toMillis(uploadSweepAge), uploadSweepParallelism);
+    }
+
+    /**
+     * Returns the parts of a resumable upload that are stored in COS, indexed by part number,
+     * or {@code null} if COS no longer knows the upload.
+     */
+    @Nullable
+    protected PartETag[] listStoredParts(CosClientHolder target, UploadState state) {
+        PartETag[] partETags = new PartETag[MAX_PART_COUNT];
+        ListPartsRequest listPartsRequest = new ListPartsRequest(target.getBucket(), state.getFileKey(), state.getUploadId());
+        PartListing partListing;
+        try {
+            do {
+                partListing = target.getClient().listParts(listPartsRequest);
+                for (PartSummary partSummary : partListing.getParts()) {
+                    // a shorter part is the last one or an incomplete attempt, it is cheap to send again
+                    if (partSummary.getSize() == state.getPartSize()) {
+                        partETags[partSummary.getPartNumber() - 1] =
+                                new PartETag(partSummary.getPartNumber(), partSummary.getETag());
+                    }
+                }
+                listPartsRequest.setPartNumberMarker(partListing.getNextPartNumberMarker());
+            } while (partListing.isTruncated());
+        } catch (CosServiceException e) {
+            if (e.getStatusCode() == 404) {
+                log.info("Upload {} of {} no longer exists, starting it from the beginning", state.getUploadId(), state.getFileKey());
+                return null;
+            }
+            throw e;
+        }
+        return partETags;
+    }
+
+    protected FileStorageException toFileStorageException(Exception e, String fileName) {
+        Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+        if (cause instanceof FileStorageException) {
+            return (FileStorageException) cause;
+        }
+        if (cause instanceof IOException) {
+            String message = String.format("Could not save file %s.", fileName);
+            return new FileStorageException(FileStorageException.Type.IO_EXCEPTION, message, cause);
+        }
+        return new FileStorageException(FileStorageException.Type.IO_EXCEPTION, "Uploading file to cos failed", cause);
+    }
+
+    @Override
+    public InputStream openStream(FileRef reference) {
+        return measure("open", () -> {
+            LocalFileCache cache = this.cache;
+            if (cache != null) {
+                return cache.openStream(reference.getPath(), () -> openRemoteStream(reference));
+            }
+            return openRemoteStream(reference);
+        });
+    }
+
+    /**
+     * Opens the stream like {@link #openStream(FileRef)} on the shared executor of the storage.
+     * The future completes once the object is found and its content can be read.
+     */
+    public CompletableFuture<InputStream> openStreamAsync(FileRef reference) {
+        return supplyAsync(() -> openStream(reference));
+    }
+
+    protected InputStream openRemoteStream(FileRef reference) {
+        TransferLimiter limiter = this.transferLimiter;
+        TransferPriority priority = TransferPriority.current();
+        awaitTransfer(limiter, 0);
+        CosClientHolder target = acquireClient(reference.getPath(), true);
+        try {
+            COSClient client = target.getClient();
+            if (downloadRangeThreshold > 0) {
+                TencentObjectMetadata metadata = getObjectMetadata(target, reference);
+                if (metadata != null && metadata.getContentLength() >= downloadRangeThreshold * 1024L) {
+                    InputStream rangedStream = new RangedObjectInputStream(target, reference.getPath(), metadata.getETag(),
+                            metadata.getContentLength(), downloadPrefetch, getDownloadExecutor(), rangeBufferPool, retryPolicy,
+                            limiter, priority);
+                    rangedStream = verifyChecksum(rangedStream, reference.getPath(), metadata.getCrc64());
+                    return metrics.countDownloaded(limiter.limitDownload(rangedStream, priority));
+                }
+            }
+            COSObject object = client.getObject(new GetObjectRequest(target.getBucket(), reference.getPath()));
+            limiter.requestSucceeded();
+            InputStream objectStream = verifyChecksum(target.releaseOnClose(object.getObjectContent()),
+                    reference.getPath(), getCrc64(object.getObjectMetadata()));
+            return metrics.countDownloaded(limiter.limitDownload(objectStream, priority));
+        } catch (Exception e) {
+            limiter.requestFailed(e);
+            target.release();
+            String message = String.format("Could not load file %s.", reference.getFileName());
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, message, e);
+        }
+    }
+
+    /**
+     * Wraps a stream of the whole object to compare its CRC64 with the one reported by COS when the end
+     * of the stream is reached, if download checksums are verified and COS reported a checksum.
+     */
+    protected InputStream verifyChecksum(InputStream inputStream, String key, @Nullable String crc64) {
+        if (!verifyDownloadChecksums) {
+            return inputStream;
+        }
+        if (!Crc64.isReported(crc64)) {
+            statistics.unverifiedChecksums.increment();
+            log.debug("COS did not report the CRC64 of {}, the download is not verified", key);
+            return inputStream;
+        }
+        return new ChecksumVerifyingInputStream(inputStream, key, crc64, statistics);
+    }
+
+    @Nullable
+    protected static String getCrc64(ObjectMetadata objectMetadata) {
+        Object crc64 = objectMetadata.getRawMetadataValue(CRC64_HEADER);
+        return crc64 != null ? crc64.toString() : null;
+    }
+
+    @Override
+    public void removeFile(FileRef reference) {
+        measure("remove", () -> {
+            doRemoveFile(reference);
+            return null;
+        });
+    }
+
+    protected void doRemoveFile(FileRef reference) {
+        CosClientHolder target = acquireClient(reference.getPath(), false);
+        try {
+            COSClient client = target.getClient();
+            DeleteObjectRequest request = new DeleteObjectRequest(target.getBucket(),reference.getPath());
+            client.deleteObject(request);
+            fileRemoved(reference.getPath());
+        } catch (Exception e) {
+            String message = String.format("Could not delete file %s.", reference.getFileName());
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, message, e);
+        } finally {
+            target.release();
+        }
+    }
+
+    /**
+     * Copies the file to a new key on the COS side, the content does not pass through the application.
+     * Objects of {@link #copyMultipartThreshold} kB or larger are copied with parallel part copies.
+     *
+     * @return reference to the copy, which has the same file name
+     */
+    public FileRef copyFile(FileRef source) {
+        return measure("copy", () -> doCopyFile(source));
+    }
+
+    /**
+     * Copies the file like {@link #copyFile(FileRef)} and removes the source. If the source cannot be removed,
+     * the copy is removed and the source is kept.
+     *
+     * @return reference to the moved file
+     */
+    public FileRef moveFile(FileRef source) {
+        return measure("move", () -> {
+            FileRef copy = doCopyFile(source);
+            try {
+                doRemoveFile(source);
+            } catch (RuntimeException e) {
+                try {
+                    doRemoveFile(copy);
+                } catch (RuntimeException removeError) {
+                    e.addSuppressed(removeError);
+                }
+                throw e;
+            }
+            return copy;
+        });
+    }
+
+    protected FileRef doCopyFile(FileRef source) {
+        String fileKey = createFileKey(source.getFileName());
+        // replicas may lag behind, the copy is made from the primary bucket
+        CosClientHolder sourceTarget = acquireClient(source.getPath(), false);
+        try {
+            CosClientHolder target = acquireClient(fileKey, false);
+            try {
+                TencentObjectMetadata metadata = getObjectMetadata(sourceTarget, source);
+                if (metadata == null) {
+                    String message = String.format("File %s not found.", source.getFileName());
+                    throw new FileStorageException(FileStorageException.Type.FILE_NOT_FOUND, message);
+                }
+                if (metadata.getContentLength() < copyMultipartThreshold * 1024L) {
+                    copyObject(sourceTarget, source.getPath(), target, fileKey);
+                } else {
+                    copyParts(sourceTarget, source.getPath(), target, fileKey, metadata.getContentLength());
+                }
+            } finally {
+                target.release();
+            }
+        } finally {
+            sourceTarget.release();
+        }
+        return new FileRef(getStorageName(), fileKey, source.getFileName());
+    }
+
+    protected void copyObject(CosClientHolder source, String sourceKey, CosClientHolder target, String fileKey) {
+        CopyObjectRequest request = new CopyObjectRequest(source.getRegion(), source.getBucket(), sourceKey,
+                target.getBucket(), fileKey);
+        try {
+            target.getClient().copyObject(request);
+        } catch (Exception e) {
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, "Could not copy " + sourceKey, e);
+        }
+    }
+
+    /**
+     * Copies the object with a multipart upload whose parts are copied from ranges of the source,
+     * {@link #uploadParallelism} parts at the same time. The upload is aborted if a part cannot be copied.
+     */
+    protected void copyParts(CosClientHolder source, String sourceKey, CosClientHolder target, String fileKey,
+                             long contentLength) {
+        long partSize = Math.max(copyPartSize * 1024L, (contentLength + MAX_PART_COUNT - 1) / MAX_PART_COUNT);
+        int partCount = (int) ((contentLength + partSize - 1) / partSize);
+        PartETag[] partETags = new PartETag[partCount];
+        Semaphore partPermits = new Semaphore(uploadParallelism);
+        List<CompletableFuture<Void>> partFutures = new ArrayList<>(partCount);
+        CompletableFuture<Void> failure = new CompletableFuture<>();
+
+        String uploadId = claimUploadId(target, fileKey);
+        try {
+            for (int partIndex = 0; partIndex < partCount && !failure.isDone(); partIndex++) {
+                int partNumber = partIndex + 1;
+                long firstByte = partIndex * partSize;
+                long lastByte = Math.min(firstByte + partSize, contentLength) - 1;
+                partPermits.acquire();
+                partFutures.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        partETags[partNumber - 1] = copyPart(source, sourceKey, target, fileKey, uploadId,
+                                partNumber, firstByte, lastByte);
+                    } finally {
+                        partPermits.release();
+                    }
+                }, getRequestExecutor()).whenComplete((result, error) -> {
+                    if (error != null) {
+                        failure.completeExceptionally(error);
+                    }
+                }));
+            }
+            CompletableFuture.allOf(partFutures.toArray(new CompletableFuture[0])).get();
+            completeMultipartUpload(target, partETags, partCount, fileKey, uploadId);
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            CompletableFuture.allOf(partFutures.toArray(new CompletableFuture[0]))
+                    .handle((result, error) -> null)
+                    .join();
+            abortMultipartUpload(target, fileKey, uploadId);
+            Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+            if (cause instanceof FileStorageException) {
+                throw (FileStorageException) cause;
+            }
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, "Could not copy " + sourceKey, cause);
+        }
+    }
+
+    private PartETag copyPart(CosClientHolder source, String sourceKey, CosClientHolder target, String fileKey,
+                              String uploadId, int partNumber, long firstByte, long lastByte) {
+        CopyPartRequest request = new CopyPartRequest();
+        request.setSourceBucketRegion(source.getRegion());
+        request.setSourceBucketName(source.getBucket());
+        request.setSourceKey(sourceKey);
+        request.setDestinationBucketName(target.getBucket());
+        request.setDestinationKey(fileKey);
+        request.setUploadId(uploadId);
+        request.setPartNumber(partNumber);
+        request.setFirstByte(firstByte);
+        request.setLastByte(lastByte);
+        RetryPolicy retryPolicy = this.retryPolicy;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                CopyPartResult result = target.getClient().copyPart(request);
+                if (result == null) {
+                    throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION,
+                            String.format("Part %d of %s was not copied", partNumber, sourceKey));
+                }
+                return result.getPartETag();
+            } catch (RuntimeException e) {
+                if (!retryPolicy.shouldRetry(e, attempt)) {
+                    throw e;
+                }
+                long backoff = retryPolicy.getBackoff(attempt);
+                log.warn("Copying part {} of {} failed, retrying in {} ms: {}", partNumber, sourceKey, backoff, e.toString());
+                statistics.partRetries.increment();
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, "Copying a part interrupted", ie);
+                }
+            }
+        }
+    }
+
+    public CompletableFuture<Void> removeFileAsync(FileRef reference) {
+        return supplyAsync(() -> {
+            removeFile(reference);
+            return null;
+        });
+    }
+
+    /**
+     * Removes the files with multi-object delete requests of up to {@link #MAX_DELETE_BATCH_SIZE} keys, sending
+     * at most {@link #removeParallelism} requests at the same time. A failure of some files does not stop
+     * the removal of the other ones, it is reported in the result.
+     */
+    public BatchRemoveResult removeFiles(Collection<FileRef> references) {
+        return measure("removeBatch", () -> doRemoveFiles(references));
+    }
+
+    protected BatchRemoveResult doRemoveFiles(Collection<FileRef> references) {
+        Map<String, FileRef> referencesByKey = new LinkedHashMap<>();
+        for (FileRef reference : references) {
+            referencesByKey.putIfAbsent(reference.getPath(), reference);
+        }
+        // a delete request removes objects of a single bucket
+        Map<String, List<String>> keysByShard = new LinkedHashMap<>();
+        ShardRouter router = shardRouter;
+        for (String key : referencesByKey.keySet()) {
+            ShardRouter.Shard shard = router != null ? router.getShard(key) : null;
+            keysByShard.computeIfAbsent(shard != null ? shard.getId() : "", id -> new ArrayList<>()).add(key);
+        }
+        BatchRemoveResult result = new BatchRemoveResult();
+        Semaphore batchPermits = new Semaphore(removeParallelism);
+        List<CompletableFuture<Void>> batchFutures = new ArrayList<>();
+        try {
+            for (List<String> keys : keysByShard.values()) {
+                for (int start = 0; start < keys.size(); start += MAX_DELETE_BATCH_SIZE) {
+                    List<String> batch = keys.subList(start, Math.min(start + MAX_DELETE_BATCH_SIZE, keys.size()));
+                    batchPermits.acquire();
+                    batchFutures.add(CompletableFuture
+                            .runAsync(() -> removeBatch(batch, referencesByKey, result), getRequestExecutor())
+                            .whenComplete((r, e) -> batchPermits.release()));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, "Removing files interrupted", e);
+        } finally {
+            CompletableFuture.allOf(batchFutures.toArray(new CompletableFuture[0])).join();
+        }
+        return result;
+    }
+
+    /**
+     * Removes a batch of keys that are stored in the same bucket.
+     */
+    protected void removeBatch(List<String> keys, Map<String, FileRef> referencesByKey, BatchRemoveResult result) {
+        CosClientHolder target = acquireClient(keys.get(0), false);
+        try {
+            removeBatch(target, keys, referencesByKey, result);
+        } finally {
+            target.release();
+        }
+    }
+
+    protected void removeBatch(CosClientHolder target, List<String> keys, Map<String, FileRef> referencesByKey,
+                               BatchRemoveResult result) {
+        DeleteObjectsRequest request = new DeleteObjectsRequest(target.getBucket());
+        List<DeleteObjectsRequest.KeyVersion> keyVersions = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            keyVersions.add(new DeleteObjectsRequest.KeyVersion(key));
+        }
+        request.setKeys(keyVersions);
+        request.setQuiet(false);
+        List<DeleteObjectsResult.DeletedObject> deletedObjects;
+        try {
+            deletedObjects = target.getClient().deleteObjects(request).getDeletedObjects();
+        } catch (MultiObjectDeleteException e) {
+            deletedObjects = e.getDeletedObjects();
+            for (MultiObjectDeleteException.DeleteError error : e.getErrors()) {
+                FileRef reference = findReference(referencesByKey, error.getKey());
+                if (reference != null) {
+                    result.failures.put(reference, error.getCode() + ": " + error.getMessage());
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Cannot remove a batch of {} files", keys.size(), e);
+            for (String key : keys) {
+                result.failures.put(referencesByKey.get(key), e.toString());
+            }
+            return;
+        }
+        for (DeleteObjectsResult.DeletedObject deletedObject : deletedObjects) {
+            FileRef reference = findReference(referencesByKey, deletedObject.getKey());
+            if (reference != null) {
+                fileRemoved(reference.getPath());
+                result.removed.add(reference);
+            }
+        }
+    }
+
+    /**
+     * Returns the reference of a key reported by a multi-object delete response. The key is looked up as it is
+     * and, if it is not found, URL-decoded, since COS encodes keys with characters that are not valid in XML.
+     */
+    @Nullable
+    protected FileRef findReference(Map<String, FileRef> referencesByKey, @Nullable String reportedKey) {
+        if (reportedKey == null) {
+            log.warn("Multi-object delete response of COS reported no key");
+            return null;
+        }
+        FileRef reference = referencesByKey.get(reportedKey);
+        if (reference == null) {
+            try {
+                reference = referencesByKey.get(URLDecoder.decode(reportedKey, StandardCharsets.UTF_8.name()));
+            } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+                log.debug("Cannot decode key {}", reportedKey, e);
+            }
+        }
+        if (reference == null) {
+            log.warn("Multi-object delete response of COS reported key {} that was not requested", reportedKey);
+        }
+        return reference;
+    }
+
+    protected void fileRemoved(String key) {
+        ObjectMetadataCache metadataCache = this.metadataCache;
+        if (metadataCache != null) {
+            metadataCache.put(key, null);
+        }
+        LocalFileCache cache = this.cache;
+        if (cache != null) {
+            cache.invalidate(key);
+        }
+    }
+
+    @Override
+    public boolean fileExists(FileRef reference) {
+        return measure("exists", () -> {
+            CosClientHolder target = acquireClient(reference.getPath(), true);
+            try {
+                return getObjectMetadata(target, reference) != null;
+            } finally {
+                target.release();
+            }
+        });
+    }
+
+    public CompletableFuture<Boolean> fileExistsAsync(FileRef reference) {
+        return supplyAsync(() -> fileExists(reference));
+    }
+
+    /**
+     * Returns the metadata of the referenced object or {@code null} if the object does not exist.
+     * Results are cached for {@link TencentFileStorageProperties#getMetadataCacheTtl()} seconds.
+     */
+    @Nullable
+    public TencentObjectMetadata getObjectMetadata(FileRef reference) {
+        return measure("metadata", () -> {
+            CosClientHolder target = acquireClient(reference.getPath(), true);
+            try {
+                return getObjectMetadata(target, reference);
+            } finally {
+                target.release();
+            }
+        });
+    }
+
+    @Nullable
+    protected TencentObjectMetadata getObjectMetadata(CosClientHolder target, FileRef reference) {
+        String key = reference.getPath();
+        ObjectMetadataCache metadataCache = this.metadataCache;
+        if (metadataCache != null) {
+            ObjectMetadataCache.Lookup lookup = metadataCache.get(key);
+            if (lookup != null) {
+                statistics.metadataCacheHits.increment();
+                return lookup.getMetadata();
+            }
+        }
+        statistics.metadataRequests.increment();
+        TencentObjectMetadata metadata;
+        try {
+            ObjectMetadata objectMetadata = target.getClient().getObjectMetadata(target.getBucket(), key);
+            metadata = new TencentObjectMetadata(objectMetadata.getContentLength(), objectMetadata.getETag(),
+                    objectMetadata.getContentType(), objectMetadata.getLastModified(), getCrc64(objectMetadata));
+        } catch (CosServiceException e) {
+            if (e.getStatusCode() != 404) {
+                String message = String.format("Could not check file %s.", reference.getFileName());
+                throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, message, e);
+            }
+            metadata = null;
+        }
+        if (metadataCache != null) {
+            metadataCache.put(key, metadata);
+        }
+        return metadata;
+    }
+
+    public void setSecretId(String secretId) {
+        this.secretId = secretId;
+    }
+
+    public void setSecretKey(String secretKey) {
+        this.secretKey = secretKey;
+    }
+
+    public void setRegion(String region) {
+        this.region = region;
+    }
+
+    public void setBucket(String bucket) {
+        this.bucket = bucket;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public void setEndpointUrl(@Nullable String endpointUrl) {
+        this.endpointUrl = endpointUrl;
+    }
+
+    public void setUploadPoolSize(int uploadPoolSize) {
+        this.uploadPoolSize = uploadPoolSize;
+    }
+
+    public void setUploadQueueCapacity(int uploadQueueCapacity) {
+        this.uploadQueueCapacity = uploadQueueCapacity;
+    }
+
+    public void setUploadParallelism(int uploadParallelism) {
+        this.uploadParallelism = uploadParallelism;
+    }
+
+    public void setAdaptivePartSize(boolean adaptivePartSize) {
+        this.adaptivePartSize = adaptivePartSize;
+    }
+
+    public void setUploadVirtualThreads(boolean uploadVirtualThreads) {
+        this.uploadVirtualThreads = uploadVirtualThreads;
+    }
+
+    public void setMultipartThreshold(int multipartThreshold) {
+        this.multipartThreshold = multipartThreshold;
+    }
+
+    public void setVerifyParts(boolean verifyParts) {
+        this.verifyParts = verifyParts;
+    }
+
+    public void setVerifyUploadChecksums(boolean verifyUploadChecksums) {
+        this.verifyUploadChecksums = verifyUploadChecksums;
+    }
+
+    public void setVerifyDownloadChecksums(boolean verifyDownloadChecksums) {
+        this.verifyDownloadChecksums = verifyDownloadChecksums;
+    }
+
+    public void setPartRetryAttempts(int partRetryAttempts) {
+        this.partRetryAttempts = partRetryAttempts;
+    }
+
+    public void setPartRetryBackoff(long partRetryBackoff) {
+        this.partRetryBackoff = partRetryBackoff;
+    }
+
+    public void setPartRetryMaxBackoff(long partRetryMaxBackoff) {
+        this.partRetryMaxBackoff = partRetryMaxBackoff;
+    }
+
+    public void setUploadStateDirectory(@Nullable String uploadStateDirectory) {
+        this.uploadStateDirectory = uploadStateDirectory;
+    }
+
+    public void setDownloadRangeThreshold(int downloadRangeThreshold) {
+        this.downloadRangeThreshold = downloadRangeThreshold;
+    }
+
+    public void setDownloadRangeSize(int downloadRangeSize) {
+        this.downloadRangeSize = downloadRangeSize;
+    }
+
+    public void setDownloadPrefetch(int downloadPrefetch) {
+        this.downloadPrefetch = downloadPrefetch;
+    }
+
+    public void setDownloadPoolSize(int downloadPoolSize) {
+        this.downloadPoolSize = downloadPoolSize;
+    }
+
+    public void setCacheEnabled(boolean cacheEnabled) {
+        this.cacheEnabled = cacheEnabled;
+    }
+
+    public void setCacheDirectory(@Nullable String cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    public void setCacheMaxSize(long cacheMaxSize) {
+        this.cacheMaxSize = cacheMaxSize;
+    }
+
+    public void setMetadataCacheSize(int metadataCacheSize) {
+        this.metadataCacheSize = metadataCacheSize;
+    }
+
+    public void setMetadataCacheTtl(long metadataCacheTtl) {
+        this.metadataCacheTtl = metadataCacheTtl;
+    }
+
+    public void setMetadataCacheNegativeTtl(long metadataCacheNegativeTtl) {
+        this.metadataCacheNegativeTtl = metadataCacheNegativeTtl;
+    }
+
+    public void setRequestPoolSize(int requestPoolSize) {
+        this.requestPoolSize = requestPoolSize;
+    }
+
+    public void setRemoveParallelism(int removeParallelism) {
+        this.removeParallelism = removeParallelism;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public void setConnectionTimeout(int connectionTimeout) {
+        this.connectionTimeout = connectionTimeout;
+    }
+
+    public void setSocketTimeout(int socketTimeout) {
+        this.socketTimeout = socketTimeout;
+    }
+
+    public void setConnectionRequestTimeout(int connectionRequestTimeout) {
+        this.connectionRequestTimeout = connectionRequestTimeout;
+    }
+
+    public void setIdleConnectionAlive(int idleConnectionAlive) {
+        this.idleConnectionAlive = idleConnectionAlive;
+    }
+
+    public void setMaxErrorRetry(int maxErrorRetry) {
+        this.maxErrorRetry = maxErrorRetry;
+    }
+
+    public void setClientDrainTimeout(long clientDrainTimeout) {
+        this.clientDrainTimeout = clientDrainTimeout;
+    }
+
+    public void setShards(List<TencentFileStorageProperties.Shard> shards) {
+        this.shards = shards;
+    }
+
+    public void setLocalRegion(@Nullable String localRegion) {
+        this.localRegion = localRegion;
+    }
+
+    public void setKeyLayout(ObjectKeyLayout keyLayout) {
+        this.keyLayout = keyLayout;
+    }
+
+    public void setCopyMultipartThreshold(int copyMultipartThreshold) {
+        this.copyMultipartThreshold = copyMultipartThreshold;
+    }
+
+    public void setCopyPartSize(int copyPartSize) {
+        this.copyPartSize = copyPartSize;
+    }
+
+    public void setUploadBandwidthLimit(long uploadBandwidthLimit) {
+        this.uploadBandwidthLimit = uploadBandwidthLimit;
+    }
+
+    public void setDownloadBandwidthLimit(long downloadBandwidthLimit) {
+        this.downloadBandwidthLimit = downloadBandwidthLimit;
+    }
+
+    public void setRequestRateLimit(int requestRateLimit) {
+        this.requestRateLimit = requestRateLimit;
+    }
+
+    public void setUploadSweepInterval(long uploadSweepInterval) {
+        this.uploadSweepInterval = uploadSweepInterval;
+    }
+
+    public void setUploadSweepAge(long uploadSweepAge) {
+        this.uploadSweepAge = uploadSweepAge;
+    }
+
+    public void setUploadSweepParallelism(int uploadSweepParallelism) {
+        this.uploadSweepParallelism = uploadSweepParallelism;
+    }
+
+    public void setBulkTransferWindow(int bulkTransferWindow) {
+        this.bulkTransferWindow = bulkTransferWindow;
     }
 }
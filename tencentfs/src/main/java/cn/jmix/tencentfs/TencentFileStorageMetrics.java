@@ -0,0 +1,218 @@
+package cn.jmix.tencentfs;
+
+import com.qcloud.cos.exception.CosClientException;
+import com.qcloud.cos.exception.CosServiceException;
+import io.jmix.core.FileStorageException;
+import io.micrometer.core.instrument.*;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.apache.commons.io.input.ProxyInputStream;
+
+import javax.annotation.Nullable;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Micrometer meters of a {@link TencentFileStorage}, all of them tagged with the name of the storage.
+ * The storage records into a meter-less instance until {@link TencentFileStorage#bindMetrics(MeterRegistry)}
+ * is called.
+ */
+public class TencentFileStorageMetrics {
+
+    public static final String OPERATION_TIMER = "tencentfs.operation";
+    public static final String OPERATION_ERRORS = "tencentfs.operation.errors";
+    public static final String TRANSFERRED_BYTES = "tencentfs.bytes";
+    public static final String PART_UPLOAD_TIMER = "tencentfs.part.upload";
+    public static final String PART_RETRIES = "tencentfs.part.retries";
+    public static final String SLOW_DOWNS = "tencentfs.slowdowns";
+    public static final String UNVERIFIED_CHECKSUMS = "tencentfs.checksums.unverified";
+    public static final String ACTIVE_UPLOADS = "tencentfs.uploads.active";
+    public static final String EXECUTOR_QUEUE = "tencentfs.executor.queued";
+    public static final String UPLOAD_PART_SIZE = "tencentfs.upload.part.size";
+    public static final String UPLOAD_PARALLELISM = "tencentfs.upload.parallelism";
+    public static final String UPLOAD_THROUGHPUT = "tencentfs.upload.throughput";
+    public static final String PART_THROUGHPUT = "tencentfs.part.throughput";
+
+    static final TencentFileStorageMetrics NOOP = new TencentFileStorageMetrics(new CompositeMeterRegistry(), Tags.empty());
+
+    private final MeterRegistry registry;
+    private final Tags tags;
+    private final Counter bytesIn;
+    private final Counter bytesOut;
+    private final Timer partUploadTimer;
+    private final Map<String, Timer> operationTimers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> errorCounters = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> uploadSummaries = new ConcurrentHashMap<>();
+
+    public TencentFileStorageMetrics(MeterRegistry registry, TencentFileStorage storage) {
+        this(registry, Tags.of("storage", storage.getStorageName()));
+
+        TencentStorageStatistics statistics = storage.getStatistics();
+        FunctionCounter.builder(PART_RETRIES, statistics, TencentStorageStatistics::getPartRetries)
+                .tags(tags)
+                .description("Part upload attempts that failed and were retried")
+                .register(registry);
+        FunctionCounter.builder(SLOW_DOWNS, statistics, TencentStorageStatistics::getSlowDowns)
+                .tags(tags)
+                .description("Requests rejected by COS with 503 SlowDown")
+                .register(registry);
+        FunctionCounter.builder(UNVERIFIED_CHECKSUMS, statistics, TencentStorageStatistics::getUnverifiedChecksums)
+                .tags(tags)
+                .description("Uploaded parts, objects and downloads not verified because COS reported no CRC64")
+                .register(registry);
+        Gauge.builder(ACTIVE_UPLOADS, statistics, TencentStorageStatistics::getActiveUploads)
+                .tags(tags)
+                .description("Uploads in progress")
+                .register(registry);
+        Gauge.builder(PART_THROUGHPUT, storage, s -> s.uploadTuner != null ? s.uploadTuner.getPartThroughput() : 0)
+                .tags(tags)
+                .baseUnit("bytes")
+                .description("Moving average of the throughput (bytes/s) of a single part upload")
+                .register(registry);
+        registerQueueGauge("upload", storage, s -> s.uploadExecutor);
+        registerQueueGauge("download", storage, s -> s.downloadExecutor);
+        registerQueueGauge("request", storage, s -> s.requestExecutor);
+        registerQueueGauge("operation", storage, s -> s.operationExecutor);
+    }
+
+    private TencentFileStorageMetrics(MeterRegistry registry, Tags tags) {
+        this.registry = registry;
+        this.tags = tags;
+        this.bytesIn = Counter.builder(TRANSFERRED_BYTES)
+                .tags(tags)
+                .tag("direction", "in")
+                .baseUnit("bytes")
+                .description("Bytes downloaded from COS")
+                .register(registry);
+        this.bytesOut = Counter.builder(TRANSFERRED_BYTES)
+                .tags(tags)
+                .tag("direction", "out")
+                .baseUnit("bytes")
+                .description("Bytes uploaded to COS")
+                .register(registry);
+        this.partUploadTimer = Timer.builder(PART_UPLOAD_TIMER)
+                .tags(tags)
+                .description("Latency of successful part uploads")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private void registerQueueGauge(String executorName, TencentFileStorage storage,
+                                    Function<TencentFileStorage, ExecutorService> executorGetter) {
+        Gauge.builder(EXECUTOR_QUEUE, storage, s -> queueSize(executorGetter.apply(s)))
+                .tags(tags)
+                .tag("executor", executorName)
+                .description("Tasks waiting in the queue of the executor")
+                .register(registry);
+    }
+
+    private static double queueSize(@Nullable ExecutorService executor) {
+        return executor instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) executor).getQueue().size() : 0;
+    }
+
+    /**
+     * Records the duration of a public operation of the storage and, if it failed, its cause.
+     */
+    void operationCompleted(String operation, long durationNanos, @Nullable Throwable error) {
+        String outcome = error == null ? "success" : "error";
+        operationTimers.computeIfAbsent(operation + ":" + outcome, k -> Timer.builder(OPERATION_TIMER)
+                        .tags(tags)
+                        .tag("operation", operation)
+                        .tag("outcome", outcome)
+                        .publishPercentileHistogram()
+                        .register(registry))
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+        if (error != null) {
+            String cause = getCause(error);
+            errorCounters.computeIfAbsent(operation + ":" + cause, k -> Counter.builder(OPERATION_ERRORS)
+                            .tags(tags)
+                            .tag("operation", operation)
+                            .tag("cause", cause)
+                            .register(registry))
+                    .increment();
+        }
+    }
+
+    void partUploaded(long durationNanos, long size) {
+        partUploadTimer.record(durationNanos, TimeUnit.NANOSECONDS);
+        bytesOut.increment(size);
+    }
+
+    /**
+     * Records the part size and the number of parts in flight chosen for a multipart upload,
+     * tagged with {@code mode} adaptive or static.
+     */
+    void uploadPlanned(UploadTuner.Plan plan) {
+        String mode = getMode(plan);
+        uploadSummary(UPLOAD_PART_SIZE, mode, "bytes", "Part size of multipart uploads").record(plan.getPartSize());
+        uploadSummary(UPLOAD_PARALLELISM, mode, null, "Parts in flight of multipart uploads").record(plan.getParallelism());
+    }
+
+    /**
+     * Records the throughput (bytes/s) of a completed multipart upload.
+     */
+    void multipartUploadCompleted(UploadTuner.Plan plan, long size, long durationNanos) {
+        if (durationNanos > 0) {
+            uploadSummary(UPLOAD_THROUGHPUT, getMode(plan), "bytes", "Throughput (bytes/s) of multipart uploads")
+                    .record(size * 1e9 / durationNanos);
+        }
+    }
+
+    private DistributionSummary uploadSummary(String name, String mode, @Nullable String baseUnit, String description) {
+        return uploadSummaries.computeIfAbsent(name + ":" + mode, k -> DistributionSummary.builder(name)
+                .tags(tags)
+                .tag("mode", mode)
+                .baseUnit(baseUnit)
+                .description(description)
+                .register(registry));
+    }
+
+    private static String getMode(UploadTuner.Plan plan) {
+        return plan.isAdaptive() ? "adaptive" : "static";
+    }
+
+    void objectUploaded(long size) {
+        bytesOut.increment(size);
+    }
+
+    /**
+     * Wraps a stream of object content to count the bytes read from it.
+     */
+    InputStream countDownloaded(InputStream inputStream) {
+        return new ProxyInputStream(inputStream) {
+            @Override
+            protected void afterRead(int n) {
+                if (n > 0) {
+                    bytesIn.increment(n);
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns a low-cardinality name of the failure: the COS error code for service errors,
+     * otherwise the class of the innermost exception that is not a wrapper.
+     */
+    static String getCause(Throwable error) {
+        Throwable cause = error;
+        while (cause.getCause() != null && cause.getCause() != cause
+                && (cause instanceof FileStorageException || cause instanceof ExecutionException
+                || cause instanceof CompletionException)) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof CosServiceException && ((CosServiceException) cause).getErrorCode() != null) {
+            return ((CosServiceException) cause).getErrorCode();
+        }
+        if (cause instanceof CosClientException && cause.getCause() != null) {
+            // the SDK wraps network errors such as timeouts
+            return cause.getCause().getClass().getSimpleName();
+        }
+        return cause.getClass().getSimpleName();
+    }
+}
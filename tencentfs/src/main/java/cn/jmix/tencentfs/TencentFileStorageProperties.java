@@ -4,6 +4,8 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.ConstructorBinding;
 import org.springframework.boot.context.properties.bind.DefaultValue;
 
+import java.util.List;
+
 @ConfigurationProperties(prefix = "jmix.tencentfs")
 @ConstructorBinding
 public class TencentFileStorageProperties {
@@ -13,6 +15,50 @@ public class TencentFileStorageProperties {
     int chunkSize;
     String endpointUrl;
     String region;
+    int uploadPoolSize;
+    int uploadQueueCapacity;
+    int uploadParallelism;
+    boolean uploadVirtualThreads;
+    int multipartThreshold;
+    boolean verifyParts;
+    int partRetryAttempts;
+    long partRetryBackoff;
+    long partRetryMaxBackoff;
+    String uploadStateDirectory;
+    int downloadRangeThreshold;
+    int downloadRangeSize;
+    int downloadPrefetch;
+    int downloadPoolSize;
+    boolean cacheEnabled;
+    String cacheDirectory;
+    long cacheMaxSize;
+    int metadataCacheSize;
+    long metadataCacheTtl;
+    long metadataCacheNegativeTtl;
+    int requestPoolSize;
+    int removeParallelism;
+    int maxConnections;
+    int connectionTimeout;
+    int socketTimeout;
+    int connectionRequestTimeout;
+    int idleConnectionAlive;
+    int maxErrorRetry;
+    long clientDrainTimeout;
+    List<Shard> shards;
+    String localRegion;
+    ObjectKeyLayout keyLayout;
+    int copyMultipartThreshold;
+    int copyPartSize;
+    long uploadBandwidthLimit;
+    long downloadBandwidthLimit;
+    int requestRateLimit;
+    boolean verifyUploadChecksums;
+    boolean verifyDownloadChecksums;
+    boolean adaptivePartSize;
+    long uploadSweepInterval;
+    long uploadSweepAge;
+    int uploadSweepParallelism;
+    int bulkTransferWindow;
 
     public TencentFileStorageProperties(
             String secretId,
@@ -20,13 +66,101 @@ public class TencentFileStorageProperties {
             String bucket,
             @DefaultValue("8192") int chunkSize,
             @DefaultValue("") String endpointUrl,
-            String region) {
+            String region,
+            @DefaultValue("16") int uploadPoolSize,
+            @DefaultValue("256") int uploadQueueCapacity,
+            @DefaultValue("5") int uploadParallelism,
+            @DefaultValue("false") boolean uploadVirtualThreads,
+            @DefaultValue("8192") int multipartThreshold,
+            @DefaultValue("false") boolean verifyParts,
+            @DefaultValue("4") int partRetryAttempts,
+            @DefaultValue("200") long partRetryBackoff,
+            @DefaultValue("10000") long partRetryMaxBackoff,
+            @DefaultValue("") String uploadStateDirectory,
+            @DefaultValue("0") int downloadRangeThreshold,
+            @DefaultValue("8192") int downloadRangeSize,
+            @DefaultValue("4") int downloadPrefetch,
+            @DefaultValue("16") int downloadPoolSize,
+            @DefaultValue("false") boolean cacheEnabled,
+            @DefaultValue("") String cacheDirectory,
+            @DefaultValue("1024") long cacheMaxSize,
+            @DefaultValue("10000") int metadataCacheSize,
+            @DefaultValue("60") long metadataCacheTtl,
+            @DefaultValue("10") long metadataCacheNegativeTtl,
+            @DefaultValue("8") int requestPoolSize,
+            @DefaultValue("4") int removeParallelism,
+            @DefaultValue("1024") int maxConnections,
+            @DefaultValue("30000") int connectionTimeout,
+            @DefaultValue("30000") int socketTimeout,
+            @DefaultValue("-1") int connectionRequestTimeout,
+            @DefaultValue("60000") int idleConnectionAlive,
+            @DefaultValue("3") int maxErrorRetry,
+            @DefaultValue("300") long clientDrainTimeout,
+            @DefaultValue List<Shard> shards,
+            @DefaultValue("") String localRegion,
+            @DefaultValue("DATE") ObjectKeyLayout keyLayout,
+            @DefaultValue("1048576") int copyMultipartThreshold,
+            @DefaultValue("131072") int copyPartSize,
+            @DefaultValue("0") long uploadBandwidthLimit,
+            @DefaultValue("0") long downloadBandwidthLimit,
+            @DefaultValue("0") int requestRateLimit,
+            @DefaultValue("true") boolean verifyUploadChecksums,
+            @DefaultValue("false") boolean verifyDownloadChecksums,
+            @DefaultValue("false") boolean adaptivePartSize,
+            @DefaultValue("0") long uploadSweepInterval,
+            @DefaultValue("24") long uploadSweepAge,
+            @DefaultValue("2") int uploadSweepParallelism,
+            @DefaultValue("16") int bulkTransferWindow) {
         this.secretId = secretId;
         this.secretKey = secretKey;
         this.bucket = bucket;
         this.chunkSize = chunkSize;
         this.endpointUrl = endpointUrl;
         this.region = region;
+        this.uploadPoolSize = uploadPoolSize;
+        this.uploadQueueCapacity = uploadQueueCapacity;
+        this.uploadParallelism = uploadParallelism;
+        this.uploadVirtualThreads = uploadVirtualThreads;
+        this.multipartThreshold = multipartThreshold;
+        this.verifyParts = verifyParts;
+        this.partRetryAttempts = partRetryAttempts;
+        this.partRetryBackoff = partRetryBackoff;
+        this.partRetryMaxBackoff = partRetryMaxBackoff;
+        this.uploadStateDirectory = uploadStateDirectory;
+        this.downloadRangeThreshold = downloadRangeThreshold;
+        this.downloadRangeSize = downloadRangeSize;
+        this.downloadPrefetch = downloadPrefetch;
+        this.downloadPoolSize = downloadPoolSize;
+        this.cacheEnabled = cacheEnabled;
+        this.cacheDirectory = cacheDirectory;
+        this.cacheMaxSize = cacheMaxSize;
+        this.metadataCacheSize = metadataCacheSize;
+        this.metadataCacheTtl = metadataCacheTtl;
+        this.metadataCacheNegativeTtl = metadataCacheNegativeTtl;
+        this.requestPoolSize = requestPoolSize;
+        this.removeParallelism = removeParallelism;
+        this.maxConnections = maxConnections;
+        this.connectionTimeout = connectionTimeout;
+        this.socketTimeout = socketTimeout;
+        this.connectionRequestTimeout = connectionRequestTimeout;
+        this.idleConnectionAlive = idleConnectionAlive;
+        this.maxErrorRetry = maxErrorRetry;
+        this.clientDrainTimeout = clientDrainTimeout;
+        this.shards = shards;
+        this.localRegion = localRegion;
+        this.keyLayout = keyLayout;
+        this.copyMultipartThreshold = copyMultipartThreshold;
+        this.copyPartSize = copyPartSize;
+        this.uploadBandwidthLimit = uploadBandwidthLimit;
+        this.downloadBandwidthLimit = downloadBandwidthLimit;
+        this.requestRateLimit = requestRateLimit;
+        this.verifyUploadChecksums = verifyUploadChecksums;
+        this.verifyDownloadChecksums = verifyDownloadChecksums;
+        this.adaptivePartSize = adaptivePartSize;
+        this.uploadSweepInterval = uploadSweepInterval;
+        this.uploadSweepAge = uploadSweepAge;
+        this.uploadSweepParallelism = uploadSweepParallelism;
+        this.bulkTransferWindow = bulkTransferWindow;
     }
 
     /**
@@ -58,7 +192,8 @@ public class TencentFileStorageProperties {
     }
 
     /**
-     * Return  storage endpoint URL.
+     * Return  storage endpoint URL. Either a domain suffix such as {@code cos.ap-beijing.myqcloud.com}, which is
+     * prefixed with the bucket name, or a complete URL such as {@code https://files.example.com} of a custom domain.
      */
     public String getEndpointUrl() {
         return endpointUrl;
@@ -67,4 +202,411 @@ public class TencentFileStorageProperties {
     public String getRegion() {
         return region;
     }
+
+    /**
+     * Number of threads of the upload executor shared by all uploads of the storage.
+     * It also limits the number of parts sent to COS at the same time.
+     */
+    public int getUploadPoolSize() {
+        return uploadPoolSize;
+    }
+
+    /**
+     * Number of part uploads that may wait for a free upload thread. When the queue is full,
+     * the uploading thread sends the part itself.
+     */
+    public int getUploadQueueCapacity() {
+        return uploadQueueCapacity;
+    }
+
+    /**
+     * Number of parts of a single upload that are buffered and sent at the same time.
+     */
+    public int getUploadParallelism() {
+        return uploadParallelism;
+    }
+
+    /**
+     * Whether parts are uploaded by virtual threads. Requires JDK 21, ignored on older runtimes.
+     */
+    public boolean isUploadVirtualThreads() {
+        return uploadVirtualThreads;
+    }
+
+    /**
+     * Files smaller than this size (kB) are uploaded with a single PUT request instead of a multipart upload.
+     * The effective threshold never exceeds {@link #getChunkSize()}.
+     */
+    public int getMultipartThreshold() {
+        return multipartThreshold;
+    }
+
+    /**
+     * Whether uploaded parts are listed and compared before a multipart upload is completed.
+     * Costs at least one additional request per upload.
+     */
+    public boolean isVerifyParts() {
+        return verifyParts;
+    }
+
+    /**
+     * Number of attempts to upload a part, including the first one.
+     */
+    public int getPartRetryAttempts() {
+        return partRetryAttempts;
+    }
+
+    /**
+     * Backoff (ms) before the first retry of a part. It doubles with every retry, a random part of it is used.
+     */
+    public long getPartRetryBackoff() {
+        return partRetryBackoff;
+    }
+
+    /**
+     * Maximum backoff (ms) between the attempts to upload a part.
+     */
+    public long getPartRetryMaxBackoff() {
+        return partRetryMaxBackoff;
+    }
+
+    /**
+     * Directory that keeps the state of resumable uploads. Defaults to a directory in {@code java.io.tmpdir}.
+     */
+    public String getUploadStateDirectory() {
+        return uploadStateDirectory;
+    }
+
+    /**
+     * Objects of this size (kB) or larger are downloaded with parallel ranged requests.
+     * 0 disables ranged downloads, otherwise every download costs an additional HEAD request.
+     */
+    public int getDownloadRangeThreshold() {
+        return downloadRangeThreshold;
+    }
+
+    /**
+     * Size (kB) of a range of a parallel download.
+     */
+    public int getDownloadRangeSize() {
+        return downloadRangeSize;
+    }
+
+    /**
+     * Number of ranges fetched ahead of the reader of a parallel download.
+     * A download holds at most {@code (downloadPrefetch + 1) * downloadRangeSize} in memory.
+     */
+    public int getDownloadPrefetch() {
+        return downloadPrefetch;
+    }
+
+    /**
+     * Number of threads fetching ranges for all parallel downloads of the storage.
+     */
+    public int getDownloadPoolSize() {
+        return downloadPoolSize;
+    }
+
+    /**
+     * Whether downloaded files are cached on the local disk.
+     */
+    public boolean isCacheEnabled() {
+        return cacheEnabled;
+    }
+
+    /**
+     * Directory of the local cache. Defaults to a directory in {@code java.io.tmpdir}, its content is removed on startup.
+     */
+    public String getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    /**
+     * Maximum total size (MB) of the files in the local cache, least recently used files are evicted first.
+     */
+    public long getCacheMaxSize() {
+        return cacheMaxSize;
+    }
+
+    /**
+     * Maximum number of objects whose existence and metadata are cached, 0 disables the cache.
+     */
+    public int getMetadataCacheSize() {
+        return metadataCacheSize;
+    }
+
+    /**
+     * Time to live (s) of the cached metadata of an existing object.
+     */
+    public long getMetadataCacheTtl() {
+        return metadataCacheTtl;
+    }
+
+    /**
+     * Time to live (s) of a cached missing object.
+     */
+    public long getMetadataCacheNegativeTtl() {
+        return metadataCacheNegativeTtl;
+    }
+
+    /**
+     * Number of threads running asynchronous operations and COS requests that do not transfer file content,
+     * such as batch deletes.
+     */
+    public int getRequestPoolSize() {
+        return requestPoolSize;
+    }
+
+    /**
+     * Number of multi-object delete requests of a batch removal sent at the same time.
+     */
+    public int getRemoveParallelism() {
+        return removeParallelism;
+    }
+
+    /**
+     * Maximum number of pooled HTTP connections of the COS client.
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Timeout (ms) of establishing a connection to COS.
+     */
+    public int getConnectionTimeout() {
+        return connectionTimeout;
+    }
+
+    /**
+     * Timeout (ms) of waiting for data from an established connection.
+     */
+    public int getSocketTimeout() {
+        return socketTimeout;
+    }
+
+    /**
+     * Timeout (ms) of waiting for a free connection of the pool, -1 waits indefinitely.
+     */
+    public int getConnectionRequestTimeout() {
+        return connectionRequestTimeout;
+    }
+
+    /**
+     * Time (ms) after which idle pooled connections are closed.
+     */
+    public int getIdleConnectionAlive() {
+        return idleConnectionAlive;
+    }
+
+    /**
+     * Number of retries of a failed request by the COS client itself.
+     */
+    public int getMaxErrorRetry() {
+        return maxErrorRetry;
+    }
+
+    /**
+     * Time (s) after which a client replaced by a refresh is shut down even if some of its requests,
+     * such as unclosed download streams, are still in flight.
+     */
+    public long getClientDrainTimeout() {
+        return clientDrainTimeout;
+    }
+
+    /**
+     * Buckets that new files are spread across by consistent hashing of their keys. Files saved before
+     * the shards were configured stay in {@link #getBucket()}. Empty to store all files in that bucket.
+     */
+    public List<Shard> getShards() {
+        return shards;
+    }
+
+    /**
+     * Region of this node, reads of a shard go to its replica in this region if there is one.
+     * Defaults to {@link #getRegion()}.
+     */
+    public String getLocalRegion() {
+        return localRegion;
+    }
+
+    /**
+     * Layout of the keys of new files.
+     */
+    public ObjectKeyLayout getKeyLayout() {
+        return keyLayout;
+    }
+
+    /**
+     * Objects of this size (kB) or larger are copied with parallel part copies instead of a single copy request.
+     */
+    public int getCopyMultipartThreshold() {
+        return copyMultipartThreshold;
+    }
+
+    /**
+     * Size (kB) of a part of a multipart copy.
+     */
+    public int getCopyPartSize() {
+        return copyPartSize;
+    }
+
+    /**
+     * Bandwidth (kB/s) of the uploads of the storage, 0 for no limit.
+     */
+    public long getUploadBandwidthLimit() {
+        return uploadBandwidthLimit;
+    }
+
+    /**
+     * Bandwidth (kB/s) of the downloads of the storage, 0 for no limit.
+     */
+    public long getDownloadBandwidthLimit() {
+        return downloadBandwidthLimit;
+    }
+
+    /**
+     * Requests per second that the storage sends for uploads and downloads, 0 for no limit.
+     */
+    public int getRequestRateLimit() {
+        return requestRateLimit;
+    }
+
+    /**
+     * Whether the CRC64 of uploaded parts and objects, computed while they are read, is compared with the one reported by COS.
+     */
+    public boolean isVerifyUploadChecksums() {
+        return verifyUploadChecksums;
+    }
+
+    /**
+     * Whether the CRC64 of downloaded objects is computed while they are read and compared with the one reported by COS
+     * at the end of the stream.
+     */
+    public boolean isVerifyDownloadChecksums() {
+        return verifyDownloadChecksums;
+    }
+
+    /**
+     * Whether the part size and the number of parts in flight of an upload are chosen from its content length
+     * and the observed throughput of part uploads instead of {@link #getChunkSize()} and {@link #getUploadParallelism()}.
+     */
+    public boolean isAdaptivePartSize() {
+        return adaptivePartSize;
+    }
+
+    /**
+     * Interval (min) between the sweeps that abort incomplete multipart uploads left by failed or stopped
+     * processes, 0 disables the sweeps.
+     */
+    public long getUploadSweepInterval() {
+        return uploadSweepInterval;
+    }
+
+    /**
+     * Age (h) after which an incomplete multipart upload that is not in progress in this process is aborted by a sweep.
+     */
+    public long getUploadSweepAge() {
+        return uploadSweepAge;
+    }
+
+    /**
+     * Maximum number of uploads aborted by a sweep at the same time.
+     */
+    public int getUploadSweepParallelism() {
+        return uploadSweepParallelism;
+    }
+
+    /**
+     * Maximum number of files of a bulk upload or download that are transferred at the same time.
+     */
+    public int getBulkTransferWindow() {
+        return bulkTransferWindow;
+    }
+
+    public static class Shard {
+        String id;
+        String bucket;
+        String region;
+        String endpointUrl;
+        int weight;
+        List<Replica> replicas;
+
+        public Shard(String id,
+                     String bucket,
+                     String region,
+                     @DefaultValue("") String endpointUrl,
+                     @DefaultValue("1") int weight,
+                     @DefaultValue List<Replica> replicas) {
+            this.id = id;
+            this.bucket = bucket;
+            this.region = region;
+            this.endpointUrl = endpointUrl;
+            this.weight = weight;
+            this.replicas = replicas;
+        }
+
+        /**
+         * Identifier of the shard, the first segment of the keys of its files. Must not change once files
+         * are stored in the shard.
+         */
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * Bucket that receives the writes of the shard.
+         */
+        public String getBucket() {
+            return bucket;
+        }
+
+        public String getRegion() {
+            return region;
+        }
+
+        public String getEndpointUrl() {
+            return endpointUrl;
+        }
+
+        /**
+         * Relative share of the new files stored in the shard.
+         */
+        public int getWeight() {
+            return weight;
+        }
+
+        /**
+         * Read-only copies of the bucket in other regions, kept up to date by COS bucket replication.
+         */
+        public List<Replica> getReplicas() {
+            return replicas;
+        }
+    }
+
+    public static class Replica {
+        String bucket;
+        String region;
+        String endpointUrl;
+
+        public Replica(String bucket,
+                       String region,
+                       @DefaultValue("") String endpointUrl) {
+            this.bucket = bucket;
+            this.region = region;
+            this.endpointUrl = endpointUrl;
+        }
+
+        public String getBucket() {
+            return bucket;
+        }
+
+        public String getRegion() {
+            return region;
+        }
+
+        public String getEndpointUrl() {
+            return endpointUrl;
+        }
+    }
 }
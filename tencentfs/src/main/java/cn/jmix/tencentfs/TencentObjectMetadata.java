@@ -0,0 +1,71 @@
+package cn.jmix.tencentfs;
+
+import javax.annotation.Nullable;
+import java.util.Date;
+
+/**
+ * Metadata of an object stored in COS.
+ */
+public class TencentObjectMetadata {
+
+    protected final long contentLength;
+    protected final String eTag;
+    protected final String contentType;
+    protected final Date lastModified;
+    protected final String crc64;
+
+    public TencentObjectMetadata(long contentLength, @Nullable String eTag,
+                                 @Nullable String contentType, @Nullable Date lastModified) {
+        this(contentLength, eTag, contentType, lastModified, null);
+    }
+
+    public TencentObjectMetadata(long contentLength, @Nullable String eTag,
+                                 @Nullable String contentType, @Nullable Date lastModified, @Nullable String crc64) {
+        this.contentLength = contentLength;
+        this.eTag = eTag;
+        this.contentType = contentType;
+        this.lastModified = lastModified;
+        this.crc64 = crc64;
+    }
+
+    /**
+     * Object size in bytes.
+     */
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    @Nullable
+    public String getETag() {
+        return eTag;
+    }
+
+    @Nullable
+    public String getContentType() {
+        return contentType;
+    }
+
+    @Nullable
+    public Date getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * CRC64 (ECMA-182) of the content as an unsigned decimal number, as reported by COS.
+     */
+    @Nullable
+    public String getCrc64() {
+        return crc64;
+    }
+
+    @Override
+    public String toString() {
+        return "TencentObjectMetadata{" +
+                "contentLength=" + contentLength +
+                ", eTag='" + eTag + '\'' +
+                ", contentType='" + contentType + '\'' +
+                ", lastModified=" + lastModified +
+                ", crc64='" + crc64 + '\'' +
+                '}';
+    }
+}
@@ -10,6 +10,8 @@ import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Nullable;
+import java.util.List;
+import java.util.stream.Collectors;
 
 @ManagedResource(description = "Manages COS file storage client", objectName = "jmix.tencentfs:type=TencentFileStorage")
 @Component("tencentfs_TencentFileStorageManagementFacade")
@@ -68,4 +70,70 @@ public class TencentStorageManagementFacade {
         }
         return "Not an COS file storage - refresh attempt ignored";
     }
+
+    @ManagedOperation(description = "Show COS file storage statistics by storage name")
+    @ManagedOperationParameters({
+            @ManagedOperationParameter(name = "storageName", description = "Storage name")})
+    public String getStatistics(String storageName) {
+        FileStorage fileStorage = fileStorageLocator.getByName(storageName);
+        if (fileStorage instanceof TencentFileStorage) {
+            return ((TencentFileStorage) fileStorage).getStatistics().toString();
+        }
+        return "Not an COS file storage";
+    }
+
+    @ManagedOperation(description = "List incomplete multipart uploads of COS file storage by storage name")
+    @ManagedOperationParameters({
+            @ManagedOperationParameter(name = "storageName", description = "Storage name")})
+    public String listMultipartUploads(String storageName) {
+        FileStorage fileStorage = fileStorageLocator.getByName(storageName);
+        if (fileStorage instanceof TencentFileStorage) {
+            List<MultipartUploadInfo> uploads = ((TencentFileStorage) fileStorage).listMultipartUploads();
+            if (uploads.isEmpty()) {
+                return "No incomplete multipart uploads";
+            }
+            return uploads.stream()
+                    .map(MultipartUploadInfo::toString)
+                    .collect(Collectors.joining("\n"));
+        }
+        return "Not an COS file storage";
+    }
+
+    @ManagedOperation(description = "Abort multipart upload of COS file storage")
+    @ManagedOperationParameters({
+            @ManagedOperationParameter(name = "storageName", description = "Storage name"),
+            @ManagedOperationParameter(name = "fileKey", description = "Object key of the upload"),
+            @ManagedOperationParameter(name = "uploadId", description = "Upload id")})
+    public String abortMultipartUpload(String storageName, String fileKey, String uploadId) {
+        FileStorage fileStorage = fileStorageLocator.getByName(storageName);
+        if (fileStorage instanceof TencentFileStorage) {
+            ((TencentFileStorage) fileStorage).abortMultipartUpload(fileKey, uploadId);
+            return "Aborted successfully";
+        }
+        return "Not an COS file storage - abort attempt ignored";
+    }
+
+    @ManagedOperation(description = "Abort old incomplete multipart uploads of COS file storage now")
+    @ManagedOperationParameters({
+            @ManagedOperationParameter(name = "storageName", description = "Storage name")})
+    public String sweepMultipartUploads(String storageName) {
+        FileStorage fileStorage = fileStorageLocator.getByName(storageName);
+        if (fileStorage instanceof TencentFileStorage) {
+            int aborted = ((TencentFileStorage) fileStorage).sweepMultipartUploads();
+            return aborted < 0 ? "Sweep is already running" : "Aborted " + aborted + " uploads";
+        }
+        return "Not an COS file storage - sweep attempt ignored";
+    }
+
+    @ManagedOperation(description = "Show multipart upload sweeper statistics by storage name")
+    @ManagedOperationParameters({
+            @ManagedOperationParameter(name = "storageName", description = "Storage name")})
+    public String getSweeperStatistics(String storageName) {
+        FileStorage fileStorage = fileStorageLocator.getByName(storageName);
+        if (fileStorage instanceof TencentFileStorage) {
+            TencentFileStorage tencentFileStorage = (TencentFileStorage) fileStorage;
+            return tencentFileStorage.uploadSweeper + ", uploadsInProgress=" + tencentFileStorage.getUploadsInProgress().size();
+        }
+        return "Not an COS file storage";
+    }
 }
@@ -0,0 +1,141 @@
+package cn.jmix.tencentfs;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cumulative counters and the uploads in progress of a {@link TencentFileStorage}.
+ */
+public class TencentStorageStatistics {
+
+    protected final LongAdder singlePutUploads = new LongAdder();
+    protected final LongAdder multipartUploads = new LongAdder();
+    protected final LongAdder resumedUploads = new LongAdder();
+    protected final LongAdder abortedUploads = new LongAdder();
+    protected final LongAdder partRetries = new LongAdder();
+    protected final LongAdder cacheHits = new LongAdder();
+    protected final LongAdder cacheMisses = new LongAdder();
+    protected final LongAdder cacheEvictions = new LongAdder();
+    protected final LongAdder metadataCacheHits = new LongAdder();
+    protected final LongAdder metadataRequests = new LongAdder();
+    protected final LongAdder activeUploads = new LongAdder();
+    protected final LongAdder slowDowns = new LongAdder();
+    protected final LongAdder checksumMismatches = new LongAdder();
+    protected final LongAdder unverifiedChecksums = new LongAdder();
+
+    /**
+     * Number of files uploaded with a single PUT request.
+     */
+    public long getSinglePutUploads() {
+        return singlePutUploads.sum();
+    }
+
+    /**
+     * Number of files uploaded with a multipart upload.
+     */
+    public long getMultipartUploads() {
+        return multipartUploads.sum();
+    }
+
+    /**
+     * Number of multipart uploads resumed from a persisted state.
+     */
+    public long getResumedUploads() {
+        return resumedUploads.sum();
+    }
+
+    /**
+     * Number of multipart uploads aborted after a failure.
+     */
+    public long getAbortedUploads() {
+        return abortedUploads.sum();
+    }
+
+    /**
+     * Number of part upload attempts that failed and were retried.
+     */
+    public long getPartRetries() {
+        return partRetries.sum();
+    }
+
+    /**
+     * Number of downloads served by the local cache.
+     */
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    /**
+     * Number of downloads that were not cached and went to COS.
+     */
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    /**
+     * Number of files evicted from the local cache.
+     */
+    public long getCacheEvictions() {
+        return cacheEvictions.sum();
+    }
+
+    /**
+     * Number of existence and metadata checks answered by the metadata cache.
+     */
+    public long getMetadataCacheHits() {
+        return metadataCacheHits.sum();
+    }
+
+    /**
+     * Number of HEAD requests sent to COS for existence and metadata checks.
+     */
+    public long getMetadataRequests() {
+        return metadataRequests.sum();
+    }
+
+    /**
+     * Number of uploads in progress.
+     */
+    public long getActiveUploads() {
+        return activeUploads.sum();
+    }
+
+    /**
+     * Number of requests that COS rejected with 503 SlowDown.
+     */
+    public long getSlowDowns() {
+        return slowDowns.sum();
+    }
+
+    /**
+     * Number of uploaded parts, objects and downloads whose CRC64 did not match the one reported by COS.
+     */
+    public long getChecksumMismatches() {
+        return checksumMismatches.sum();
+    }
+
+    /**
+     * Number of uploaded parts, objects and downloads that were not verified because COS did not report
+     * a valid CRC64.
+     */
+    public long getUnverifiedChecksums() {
+        return unverifiedChecksums.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "singlePutUploads=" + getSinglePutUploads()
+                + ", multipartUploads=" + getMultipartUploads()
+                + ", resumedUploads=" + getResumedUploads()
+                + ", abortedUploads=" + getAbortedUploads()
+                + ", partRetries=" + getPartRetries()
+                + ", cacheHits=" + getCacheHits()
+                + ", cacheMisses=" + getCacheMisses()
+                + ", cacheEvictions=" + getCacheEvictions()
+                + ", metadataCacheHits=" + getMetadataCacheHits()
+                + ", metadataRequests=" + getMetadataRequests()
+                + ", activeUploads=" + getActiveUploads()
+                + ", slowDowns=" + getSlowDowns()
+                + ", checksumMismatches=" + getChecksumMismatches()
+                + ", unverifiedChecksums=" + getUnverifiedChecksums();
+    }
+}
@@ -0,0 +1,53 @@
+package cn.jmix.tencentfs;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket that refills at a constant rate and holds at most one second of tokens. A request for more
+ * tokens than are available is granted as soon as the bucket is not in debt and delays the following requests,
+ * so parts larger than the rate do not wait forever. Batch requests wait while interactive ones are waiting.
+ */
+class TokenBucket {
+
+    private final double tokensPerNano;
+    private final double capacity;
+
+    // guarded by this
+    private double available;
+    private long refilledAt = System.nanoTime();
+    private int interactiveWaiters;
+
+    TokenBucket(long tokensPerSecond) {
+        this.tokensPerNano = tokensPerSecond / 1e9;
+        this.capacity = tokensPerSecond;
+        this.available = capacity;
+    }
+
+    synchronized void acquire(long tokens, TransferPriority priority) throws InterruptedException {
+        boolean interactive = priority == TransferPriority.INTERACTIVE;
+        if (interactive) {
+            interactiveWaiters++;
+        }
+        try {
+            while (true) {
+                long now = System.nanoTime();
+                available = Math.min(capacity, available + (now - refilledAt) * tokensPerNano);
+                refilledAt = now;
+                if (available >= 0 && (interactive || interactiveWaiters == 0)) {
+                    available -= tokens;
+                    return;
+                }
+                // a batch request behind interactive ones is woken up when they leave
+                long waitNanos = available < 0
+                        ? (long) Math.ceil(-available / tokensPerNano)
+                        : TimeUnit.MILLISECONDS.toNanos(10);
+                TimeUnit.NANOSECONDS.timedWait(this, Math.max(waitNanos, 1000));
+            }
+        } finally {
+            if (interactive) {
+                interactiveWaiters--;
+                notifyAll();
+            }
+        }
+    }
+}
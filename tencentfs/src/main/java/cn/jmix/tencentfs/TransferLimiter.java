@@ -0,0 +1,130 @@
+package cn.jmix.tencentfs;
+
+import com.qcloud.cos.exception.CosServiceException;
+import org.apache.commons.io.input.ProxyInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the bandwidth and the request rate of a storage and slows all its requests down while COS
+ * responds with 503 SlowDown. The pause after a SlowDown response doubles with every further one
+ * and halves with every successful request.
+ */
+class TransferLimiter {
+
+    private static final Logger log = LoggerFactory.getLogger(TransferLimiter.class);
+
+    private final TokenBucket uploadBandwidth;
+    private final TokenBucket downloadBandwidth;
+    private final TokenBucket requestRate;
+    private final long initialBackoff;
+    private final long maxBackoff;
+    private final TencentStorageStatistics statistics;
+
+    // ms, 0 while COS does not throttle the storage
+    private volatile long slowDownBackoff;
+    private volatile long pausedUntil;
+
+    /**
+     * @param uploadBandwidth   bytes per second sent to COS, 0 for no limit
+     * @param downloadBandwidth bytes per second read from COS, 0 for no limit
+     * @param requestRate       requests per second, 0 for no limit
+     */
+    TransferLimiter(long uploadBandwidth, long downloadBandwidth, long requestRate,
+                    long initialBackoff, long maxBackoff, TencentStorageStatistics statistics) {
+        this.uploadBandwidth = uploadBandwidth > 0 ? new TokenBucket(uploadBandwidth) : null;
+        this.downloadBandwidth = downloadBandwidth > 0 ? new TokenBucket(downloadBandwidth) : null;
+        this.requestRate = requestRate > 0 ? new TokenBucket(requestRate) : null;
+        this.initialBackoff = Math.max(1, initialBackoff);
+        this.maxBackoff = Math.max(this.initialBackoff, maxBackoff);
+        this.statistics = statistics;
+    }
+
+    /**
+     * Waits until a request can be sent.
+     */
+    void acquireRequest(TransferPriority priority) throws InterruptedException {
+        if (slowDownBackoff > 0) {
+            long pause = pausedUntil - System.nanoTime();
+            if (pause > 0) {
+                TimeUnit.NANOSECONDS.sleep(pause);
+            }
+        }
+        if (requestRate != null) {
+            requestRate.acquire(1, priority);
+        }
+    }
+
+    void acquireUpload(long bytes, TransferPriority priority) throws InterruptedException {
+        if (uploadBandwidth != null) {
+            uploadBandwidth.acquire(bytes, priority);
+        }
+    }
+
+    /**
+     * Wraps a stream of object content so that reading it keeps to the download bandwidth.
+     */
+    InputStream limitDownload(InputStream inputStream, TransferPriority priority) {
+        TokenBucket bandwidth = downloadBandwidth;
+        if (bandwidth == null) {
+            return inputStream;
+        }
+        return new ProxyInputStream(inputStream) {
+            @Override
+            protected void afterRead(int n) throws IOException {
+                if (n > 0) {
+                    try {
+                        bandwidth.acquire(n, priority);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Reading interrupted");
+                    }
+                }
+            }
+        };
+    }
+
+    void requestSucceeded() {
+        if (slowDownBackoff > 0) {
+            synchronized (this) {
+                long backoff = slowDownBackoff / 2;
+                slowDownBackoff = backoff < initialBackoff ? 0 : backoff;
+            }
+        }
+    }
+
+    void requestFailed(@Nullable Throwable error) {
+        if (!isSlowDown(error)) {
+            return;
+        }
+        statistics.slowDowns.increment();
+        long backoff;
+        synchronized (this) {
+            backoff = slowDownBackoff == 0 ? initialBackoff : Math.min(maxBackoff, slowDownBackoff * 2);
+            slowDownBackoff = backoff;
+            // jitter keeps the paused requests from coming back at the same moment
+            long pause = ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1);
+            pausedUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(pause);
+        }
+        log.debug("COS asked to slow down, pausing requests for up to {} ms", backoff);
+    }
+
+    static boolean isSlowDown(@Nullable Throwable error) {
+        while (error != null && !(error instanceof CosServiceException)) {
+            error = error.getCause();
+        }
+        if (error == null) {
+            return false;
+        }
+        CosServiceException exception = (CosServiceException) error;
+        return exception.getStatusCode() == 503 || exception.getStatusCode() == 429
+                || "SlowDown".equals(exception.getErrorCode());
+    }
+}
@@ -0,0 +1,46 @@
+package cn.jmix.tencentfs;
+
+import java.util.function.Supplier;
+
+/**
+ * Priority of the transfers of the current thread when the storage limits bandwidth or request rate.
+ * Waiting interactive transfers take the available capacity before batch transfers.
+ * <pre>{@code
+ * FileRef fileRef = TransferPriority.BATCH.call(() -> fileStorage.saveStream(fileName, inputStream));
+ * }</pre>
+ */
+public enum TransferPriority {
+
+    INTERACTIVE,
+
+    BATCH;
+
+    private static final ThreadLocal<TransferPriority> CURRENT = ThreadLocal.withInitial(() -> INTERACTIVE);
+
+    /**
+     * Returns the priority of the current thread, {@link #INTERACTIVE} by default.
+     */
+    public static TransferPriority current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Runs the action with this priority, asynchronous operations started by the action keep it.
+     */
+    public <T> T call(Supplier<T> action) {
+        TransferPriority previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return action.get();
+        } finally {
+            CURRENT.set(previous);
+        }
+    }
+
+    public void run(Runnable action) {
+        call(() -> {
+            action.run();
+            return null;
+        });
+    }
+}
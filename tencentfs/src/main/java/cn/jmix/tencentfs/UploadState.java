@@ -0,0 +1,36 @@
+package cn.jmix.tencentfs;
+
+/**
+ * Persistent state of a resumable multipart upload. It is written once when the upload is initiated;
+ * the stored parts are listed from COS when the upload is resumed.
+ */
+class UploadState {
+
+    private final String token;
+    private final String fileKey;
+    private final String uploadId;
+    private final int partSize;
+
+    UploadState(String token, String fileKey, String uploadId, int partSize) {
+        this.token = token;
+        this.fileKey = fileKey;
+        this.uploadId = uploadId;
+        this.partSize = partSize;
+    }
+
+    String getToken() {
+        return token;
+    }
+
+    String getFileKey() {
+        return fileKey;
+    }
+
+    String getUploadId() {
+        return uploadId;
+    }
+
+    int getPartSize() {
+        return partSize;
+    }
+}
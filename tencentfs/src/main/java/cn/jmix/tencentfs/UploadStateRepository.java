@@ -0,0 +1,112 @@
+package cn.jmix.tencentfs;
+
+import io.jmix.core.FileStorageException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Keeps the state of resumable uploads in property files of a local directory, one file per upload token.
+ */
+class UploadStateRepository {
+
+    private static final Logger log = LoggerFactory.getLogger(UploadStateRepository.class);
+
+    private final Path directory;
+
+    UploadStateRepository(Path directory) {
+        this.directory = directory;
+    }
+
+    @Nullable
+    UploadState load(String token) {
+        Properties properties = new Properties();
+        try (InputStream inputStream = Files.newInputStream(getFile(token))) {
+            properties.load(inputStream);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            log.warn("Cannot read the state of upload {}, starting it from the beginning", token, e);
+            return null;
+        }
+        // part entries of files written by earlier versions are ignored, stored parts are listed from COS
+        return new UploadState(token,
+                properties.getProperty("fileKey"),
+                properties.getProperty("uploadId"),
+                Integer.parseInt(properties.getProperty("partSize")));
+    }
+
+    void save(UploadState state) {
+        // the file is replaced atomically, so a crash never leaves a partially written state
+        synchronized (state) {
+            Properties properties = new Properties();
+            properties.setProperty("fileKey", state.getFileKey());
+            properties.setProperty("uploadId", state.getUploadId());
+            properties.setProperty("partSize", String.valueOf(state.getPartSize()));
+            try {
+                Files.createDirectories(directory);
+                Path file = getFile(state.getToken());
+                Path tempFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+                try (OutputStream outputStream = Files.newOutputStream(tempFile)) {
+                    properties.store(outputStream, state.getToken());
+                }
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION,
+                        "Cannot save the state of upload " + state.getToken(), e);
+            }
+        }
+    }
+
+    void delete(String token) {
+        try {
+            Files.deleteIfExists(getFile(token));
+        } catch (IOException e) {
+            log.warn("Cannot delete the state of upload {}", token, e);
+        }
+    }
+
+    /**
+     * Deletes the states of aborted uploads, so that resuming them starts new uploads instead of listing
+     * the parts of an upload that COS no longer knows. The files are looked up by their upload id.
+     */
+    void deleteUploads(Set<String> uploadIds) {
+        if (uploadIds.isEmpty() || !Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.properties")) {
+            for (Path file : files) {
+                Properties properties = new Properties();
+                try (InputStream inputStream = Files.newInputStream(file)) {
+                    properties.load(inputStream);
+                } catch (NoSuchFileException e) {
+                    // completed in the meantime
+                    continue;
+                }
+                if (uploadIds.contains(properties.getProperty("uploadId"))) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Cannot delete the states of aborted uploads {}", uploadIds, e);
+        }
+    }
+
+    private Path getFile(String token) {
+        String name = UUID.nameUUIDFromBytes(token.getBytes(StandardCharsets.UTF_8)).toString();
+        return directory.resolve(name + ".properties");
+    }
+}
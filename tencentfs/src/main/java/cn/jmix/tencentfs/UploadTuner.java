@@ -0,0 +1,145 @@
+package cn.jmix.tencentfs;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chooses the part size and the number of parts sent at the same time for an upload from its content length,
+ * the part limit of COS and a moving average of the throughput of recent part uploads.
+ * <p>
+ * Parts are sized to take about {@link #TARGET_PART_NANOS} at the observed throughput, which amortizes the
+ * latency of a request while keeping the work lost by a retry small. A mid-size file is split so that every
+ * upload thread gets a part, a large file gets parts of up to four times the default size and at least enough
+ * of them to stay below {@link TencentFileStorage#MAX_PART_COUNT}. The buffers of the parts in flight are kept
+ * within the heap budget of the default settings: the number of parts in flight is raised above the default for
+ * smaller parts and lowered below it for larger ones.
+ */
+class UploadTuner {
+
+    /**
+     * Minimal size of a part other than the last one accepted by COS.
+     */
+    static final int MIN_PART_SIZE = 1024 * 1024;
+
+    private static final long TARGET_PART_NANOS = TimeUnit.SECONDS.toNanos(2);
+    // weight of the latest sample in the moving averages
+    private static final double SMOOTHING = 0.2;
+
+    private final boolean adaptive;
+    private final int defaultPartSize;
+    private final int defaultParallelism;
+    private final int maxParallelism;
+    private final long singlePutThreshold;
+
+    // bytes per second of a single part upload and duration of a part upload, 0 until a part is uploaded
+    private volatile double partThroughput;
+    private volatile double partLatency;
+
+    /**
+     * @param singlePutThreshold content length below which uploads keep the default part size, so they can still
+     *                           be sent with a single PUT request
+     */
+    UploadTuner(boolean adaptive, int defaultPartSize, int defaultParallelism, int maxParallelism,
+                long singlePutThreshold) {
+        this.adaptive = adaptive;
+        this.defaultPartSize = defaultPartSize;
+        this.defaultParallelism = Math.max(1, defaultParallelism);
+        this.maxParallelism = Math.max(this.defaultParallelism, maxParallelism);
+        this.singlePutThreshold = singlePutThreshold;
+    }
+
+    void partUploaded(long durationNanos, long size) {
+        if (durationNanos <= 0 || size <= 0) {
+            return;
+        }
+        double throughput = size * 1e9 / durationNanos;
+        synchronized (this) {
+            partThroughput = partThroughput == 0 ? throughput : partThroughput + SMOOTHING * (throughput - partThroughput);
+            partLatency = partLatency == 0 ? durationNanos : partLatency + SMOOTHING * (durationNanos - partLatency);
+        }
+    }
+
+    /**
+     * Moving average of the throughput (bytes/s) of a single part upload.
+     */
+    double getPartThroughput() {
+        return partThroughput;
+    }
+
+    /**
+     * Moving average of the duration (ns) of a part upload.
+     */
+    double getPartLatency() {
+        return partLatency;
+    }
+
+    /**
+     * @param contentLength length of the content or -1 if it is not known
+     */
+    Plan plan(long contentLength) {
+        if (!adaptive || contentLength < singlePutThreshold) {
+            return new Plan(defaultPartSize, defaultParallelism, false);
+        }
+        long minPartSize = Math.max(MIN_PART_SIZE,
+                (contentLength + TencentFileStorage.MAX_PART_COUNT - 1) / TencentFileStorage.MAX_PART_COUNT);
+        long maxPartSize = Math.min(4L * defaultPartSize, (contentLength + maxParallelism - 1) / maxParallelism);
+        double throughput = partThroughput;
+        long partSize = throughput > 0 ? (long) (throughput * TARGET_PART_NANOS / 1e9) : defaultPartSize;
+        partSize = Math.max(minPartSize, Math.min(partSize, maxPartSize));
+        // a few size classes, so the buffers of different uploads can be pooled
+        long rounded = MIN_PART_SIZE;
+        while (rounded < partSize && rounded <= Integer.MAX_VALUE / 2) {
+            rounded <<= 1;
+        }
+        int partCount = (int) Math.min(Integer.MAX_VALUE, (contentLength + rounded - 1) / rounded);
+        int parallelism = (int) Math.min(maxParallelism, Math.max(1, getHeapBudget() / rounded));
+        return new Plan((int) rounded, Math.max(1, Math.min(parallelism, partCount)), true);
+    }
+
+    /**
+     * Plan of an upload whose part size is already chosen, such as a resumed one. The number of parts in flight
+     * is the default one, lowered so that parts larger than the default stay within the heap budget.
+     */
+    Plan planFor(int partSize) {
+        int parallelism = (int) Math.min(defaultParallelism, Math.max(1, getHeapBudget() / partSize));
+        return new Plan(partSize, parallelism, false);
+    }
+
+    /**
+     * Bytes of the part buffers of an upload with the default settings, which adaptive plans do not exceed
+     * unless a single part is larger.
+     */
+    long getHeapBudget() {
+        return (long) defaultPartSize * defaultParallelism;
+    }
+
+    /**
+     * Part size and number of parts in flight of an upload.
+     */
+    static final class Plan {
+
+        private final int partSize;
+        private final int parallelism;
+        private final boolean adaptive;
+
+        Plan(int partSize, int parallelism, boolean adaptive) {
+            this.partSize = partSize;
+            this.parallelism = parallelism;
+            this.adaptive = adaptive;
+        }
+
+        int getPartSize() {
+            return partSize;
+        }
+
+        int getParallelism() {
+            return parallelism;
+        }
+
+        /**
+         * Whether the plan was chosen for the upload, {@code false} for the default settings.
+         */
+        boolean isAdaptive() {
+            return adaptive;
+        }
+    }
+}
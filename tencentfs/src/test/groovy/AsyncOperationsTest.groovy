@@ -0,0 +1,108 @@
+import cn.jmix.tencentfs.TencentFileStorage
+import io.jmix.core.FileRef
+import test_support.StorageSpecification
+
+import java.nio.file.Files
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.TimeUnit
+
+class AsyncOperationsTest extends StorageSpecification {
+
+    static final int CHUNK_SIZE = 64 * 1024
+
+    TencentFileStorage storage
+    byte[] data = new byte[4 * CHUNK_SIZE + 100]
+
+    def setup() {
+        new Random(42).nextBytes(data)
+        storage = newStorage(partRetryBackoff: 1, partRetryMaxBackoff: 5,
+                uploadStateDirectory: Files.createTempDirectory("tencentfs-test").toString())
+    }
+
+    def "async operations complete on the executor of the storage"() {
+        when:
+        def fileRef = storage.saveStreamAsync("file.bin", new ByteArrayInputStream(data)).get()
+        def content = storage.openStreamAsync(fileRef)
+                .thenApply { it.withCloseable { it.bytes } }
+                .get()
+
+        then:
+        content == data
+        storage.fileExistsAsync(fileRef).get()
+
+        when:
+        storage.removeFileAsync(fileRef).get()
+
+        then:
+        !storage.fileExistsAsync(fileRef).get()
+        cosClient.objects.isEmpty()
+    }
+
+    def "async operations are rejected when their queue is full without blocking requests"() {
+        given:
+        storage.setRequestPoolSize(1)
+        storage.setUploadQueueCapacity(1)
+        def release = new CountDownLatch(1)
+        def blocked = new InputStream() {
+            @Override
+            int read() {
+                release.await()
+                return -1
+            }
+        }
+        def notRead = Mock(InputStream)
+
+        when:
+        def running = storage.saveStreamAsync("running.txt", blocked)
+        def queued = storage.saveStreamAsync("queued.txt", new ByteArrayInputStream("queued".bytes))
+        def rejected = storage.saveStreamAsync("rejected.txt", notRead)
+        def requestThread = CompletableFuture.supplyAsync({ Thread.currentThread().name }, storage.getRequestExecutor())
+                .get(5, TimeUnit.SECONDS)
+        rejected.get()
+
+        then:
+        def e = thrown(ExecutionException)
+        e.cause instanceof RejectedExecutionException
+        0 * notRead._
+        requestThread.contains("-request-")
+
+        when:
+        release.countDown()
+
+        then:
+        running.get(5, TimeUnit.SECONDS) != null
+        queued.get(5, TimeUnit.SECONDS) != null
+    }
+
+    def "async operations of a shut down storage return failed futures"() {
+        given:
+        storage.shutdown()
+
+        when:
+        def future = storage.fileExistsAsync(new FileRef("test", "file.bin", "file.bin"))
+
+        then:
+        future.completedExceptionally
+    }
+
+    def "tasks submitted after shutdown fail instead of being dropped"() {
+        given:
+        def executor = storage.getUploadExecutor()
+
+        when:
+        storage.shutdown()
+        CompletableFuture.runAsync({ }, executor)
+
+        then:
+        thrown(RejectedExecutionException)
+
+        when:
+        storage.getUploadExecutor()
+
+        then:
+        thrown(IllegalStateException)
+    }
+}
@@ -0,0 +1,89 @@
+import cn.jmix.tencentfs.TencentFileStorage
+import io.jmix.core.FileRef
+import test_support.StorageSpecification
+
+import java.nio.file.Files
+
+class BatchRemoveTest extends StorageSpecification {
+
+    TencentFileStorage storage
+
+    def setup() {
+        storage = newStorage(cacheEnabled: true,
+                cacheDirectory: Files.createTempDirectory("tencentfs-cache-test").toString())
+    }
+
+    def "files are removed with requests of at most 1000 keys"() {
+        given:
+        def fileRefs = (1..2500).collect { put("file-$it") }
+
+        when:
+        def result = storage.removeFiles(fileRefs)
+
+        then:
+        result.successful
+        result.removed.size() == 2500
+        cosClient.deleteBatchSizes.sort() == [500, 1000, 1000]
+        cosClient.objects.isEmpty()
+    }
+
+    def "files that cannot be removed are reported without failing the other ones"() {
+        given:
+        def fileRefs = (1..10).collect { put("file-$it") }
+        cosClient.failDelete("file-3")
+        cosClient.failDelete("file-7")
+
+        when:
+        def result = storage.removeFiles(fileRefs)
+
+        then:
+        !result.successful
+        result.removed.size() == 8
+        result.failures.keySet()*.path.sort() == ["file-3", "file-7"]
+        result.failures.values().every { it.startsWith("AccessDenied") }
+        cosClient.objects.keySet().sort() == ["file-3", "file-7"]
+    }
+
+    def "keys reported URL-encoded by COS are matched to the removed files"() {
+        given:
+        def fileRefs = ["a b.txt", "dir/c&d.txt", "plain.txt"].collect { put(it) }
+        cosClient.encodeDeletedKeys()
+        cosClient.failDelete("plain.txt")
+
+        when:
+        def result = storage.removeFiles(fileRefs)
+
+        then:
+        result.removed*.path.sort() == ["a b.txt", "dir/c&d.txt"]
+        result.failures.keySet()*.path == ["plain.txt"]
+        !result.removed.contains(null)
+    }
+
+    def "removed files are evicted from the caches"() {
+        given:
+        def fileRef = put("file-1")
+        def kept = put("file-2")
+        cosClient.failDelete("file-2")
+        [fileRef, kept].each { storage.openStream(it).close() }
+        def cachedSize = storage.cache.size
+
+        expect:
+        storage.fileExists(fileRef)
+
+        when:
+        storage.removeFiles([fileRef, kept])
+        def requests = storage.statistics.metadataRequests
+
+        then: "the removal is cached as a missing object"
+        cachedSize == 14
+        storage.cache.size == 7
+        !storage.fileExists(fileRef)
+        storage.statistics.metadataRequests == requests
+        storage.fileExists(kept)
+    }
+
+    private FileRef put(String key) {
+        cosClient.objects.put(key, "content".bytes)
+        new FileRef("test", key, key)
+    }
+}
@@ -0,0 +1,54 @@
+import cn.jmix.tencentfs.BulkTransferPipeline
+import spock.lang.Specification
+
+import java.util.concurrent.CompletableFuture
+
+class BulkTransferPipelineTest extends Specification {
+
+    def "results are passed as they complete with a bounded number in flight"() {
+        given:
+        List<CompletableFuture<String>> pending = []
+        def pipeline = new BulkTransferPipeline<Integer, String>(2, { Integer input ->
+            def future = new CompletableFuture<String>()
+            pending << future
+            // the second input completes first
+            if (input == 1) {
+                future.complete("one")
+                pending[0].complete("zero")
+            }
+            future
+        })
+        def taken = 0
+        def inputs = [hasNext: { taken < 4 }, next: { taken++ }] as Iterator<Integer>
+        List<String> results = []
+        List<Integer> takenWhenPassed = []
+
+        when:
+        pipeline.run(inputs) { result ->
+            results << (result.successful ? result.value : result.error.message)
+            takenWhenPassed << taken
+            pending.findAll { !it.done }.each { it.completeExceptionally(new IllegalStateException("failed " + pending.indexOf(it))) }
+        }
+
+        then:
+        results == ["one", "zero", "failed 2", "failed 3"]
+        takenWhenPassed == [2, 3, 4, 4]
+    }
+
+    def "results that are not consumed are closed when the consumer fails"() {
+        given:
+        List<Closeable> streams = (0..2).collect { Mock(Closeable) }
+        def pipeline = new BulkTransferPipeline<Integer, Closeable>(3, { Integer input ->
+            CompletableFuture.completedFuture(streams[input])
+        })
+
+        when:
+        pipeline.run([0, 1, 2].iterator()) { result -> throw new IllegalStateException("consumer failed") }
+
+        then:
+        thrown(IllegalStateException)
+        0 * streams[0].close()
+        1 * streams[1].close()
+        1 * streams[2].close()
+    }
+}
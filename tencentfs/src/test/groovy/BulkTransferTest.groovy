@@ -0,0 +1,73 @@
+import cn.jmix.tencentfs.BulkTransferResult
+import cn.jmix.tencentfs.TencentFileStorage
+import io.jmix.core.FileRef
+import io.jmix.core.FileStorageException
+import test_support.StorageSpecification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class BulkTransferTest extends StorageSpecification {
+
+    TencentFileStorage storage
+
+    def setup() {
+        storage = newStorage()
+    }
+
+    def "bulk transfers pass the result of every file"() {
+        given:
+        storage.setBulkTransferWindow(4)
+        Map<String, String> contents = (0..<20).collectEntries { ["file${it}.txt".toString(), "Content of file $it".toString()] }
+
+        when:
+        List<FileRef> saved = []
+        storage.saveStreams(contents.keySet().iterator(), { it }, { new ByteArrayInputStream(contents[it].bytes) }) {
+            saved << it.value
+        }
+        Map<String, String> loaded = [:]
+        List<Throwable> errors = []
+        def references = saved + [new FileRef("test", "missing.bin", "missing.bin")]
+        storage.openStreams(references.iterator()) { result ->
+            if (result.successful) {
+                result.value.withCloseable { loaded[result.input.fileName] = new String(it.bytes) }
+            } else {
+                errors << result.error
+            }
+        }
+
+        then:
+        saved.size() == 20
+        loaded == contents
+        errors.size() == 1
+        errors[0] instanceof FileStorageException
+    }
+
+    def "bulk transfers run files on the calling thread when the queue is full"() {
+        given:
+        storage.setRequestPoolSize(1)
+        storage.setUploadQueueCapacity(1)
+        storage.setBulkTransferWindow(4)
+        def release = new CountDownLatch(1)
+        def callerThread = Thread.currentThread()
+        List<Integer> openedByCaller = Collections.synchronizedList([])
+        List<BulkTransferResult<Integer, FileRef>> results = []
+
+        when:
+        storage.saveStreams((0..3).iterator(), { "file-${it}.txt".toString() }, { Integer input ->
+            if (Thread.currentThread() == callerThread) {
+                openedByCaller << input
+                release.countDown()
+            } else if (input == 0) {
+                release.await(5, TimeUnit.SECONDS)
+            }
+            new ByteArrayInputStream("content".bytes)
+        }) { results << it }
+
+        then:
+        results.size() == 4
+        results.every { it.successful }
+        // input 0 holds the only thread until a file runs on the caller, input 1 waits in the queue
+        openedByCaller.first() == 2
+    }
+}
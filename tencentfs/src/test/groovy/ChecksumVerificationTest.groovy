@@ -0,0 +1,88 @@
+import cn.jmix.tencentfs.TencentFileStorage
+import io.jmix.core.FileStorageException
+import test_support.StorageSpecification
+
+import java.nio.file.Files
+
+class ChecksumVerificationTest extends StorageSpecification {
+
+    static final int CHUNK_SIZE = 64 * 1024
+
+    TencentFileStorage storage
+    byte[] data = new byte[4 * CHUNK_SIZE + 100]
+
+    def setup() {
+        new Random(42).nextBytes(data)
+        storage = newStorage(partRetryBackoff: 1, partRetryMaxBackoff: 5,
+                uploadStateDirectory: Files.createTempDirectory("tencentfs-test").toString())
+    }
+
+    def "parts stored with a different checksum are sent again"() {
+        given:
+        cosClient.corruptPart(2, 1)
+
+        when:
+        def fileRef = storage.saveStream("file.bin", new ByteArrayInputStream(data))
+
+        then:
+        cosClient.objects[fileRef.path] == data
+        cosClient.getPartUploadCalls(2) == 2
+        storage.statistics.checksumMismatches == 1
+    }
+
+    def "upload is aborted when a part keeps being stored with a different checksum"() {
+        given:
+        cosClient.corruptPart(2, Integer.MAX_VALUE)
+
+        when:
+        storage.saveStream("file.bin", new ByteArrayInputStream(data))
+
+        then:
+        thrown(FileStorageException)
+        cosClient.getPartUploadCalls(2) == 4
+        storage.statistics.checksumMismatches == 4
+        storage.statistics.partRetries == 3
+        cosClient.abortedUploads.size() == 1
+        cosClient.pendingUploads.isEmpty()
+        cosClient.objects.isEmpty()
+    }
+
+    def "parts of local files stored with a different checksum are sent again"() {
+        given:
+        def file = Files.createTempFile("tencentfs-test", ".bin")
+        Files.write(file, data)
+        def small = Files.createTempFile("tencentfs-test", ".txt")
+        Files.write(small, "Text for testing.".bytes)
+        cosClient.corruptPart(3, 1)
+
+        when:
+        def fileRef = storage.saveFile("file.bin", file)
+        def smallRef = storage.saveFile("small.txt", small)
+
+        then:
+        cosClient.objects[fileRef.path] == data
+        cosClient.objects[smallRef.path] == "Text for testing.".bytes
+        cosClient.getPartUploadCalls(3) == 2
+        storage.statistics.checksumMismatches == 1
+        storage.statistics.unverifiedChecksums == 0
+
+        cleanup:
+        Files.deleteIfExists(file)
+        Files.deleteIfExists(small)
+    }
+
+    def "downloads are verified against the checksum of the object"() {
+        given:
+        storage.setVerifyDownloadChecksums(true)
+        def fileRef = storage.saveStream("file.bin", new ByteArrayInputStream(data))
+        byte[] stored = cosClient.objects[fileRef.path]
+        stored[1000] = (byte) (stored[1000] ^ 1)
+
+        when:
+        storage.openStream(fileRef).withCloseable { it.bytes }
+
+        then:
+        thrown(IOException)
+        storage.statistics.checksumMismatches == 1
+    }
+}
@@ -0,0 +1,43 @@
+import cn.jmix.tencentfs.TencentFileStorage
+import test_support.StorageSpecification
+
+import java.nio.file.Files
+
+class CopyFileTest extends StorageSpecification {
+
+    static final int CHUNK_SIZE = 64 * 1024
+
+    TencentFileStorage storage
+    byte[] data = new byte[4 * CHUNK_SIZE + 100]
+
+    def setup() {
+        new Random(42).nextBytes(data)
+        storage = newStorage(partRetryBackoff: 1, partRetryMaxBackoff: 5,
+                uploadStateDirectory: Files.createTempDirectory("tencentfs-test").toString())
+    }
+
+    def "large file is copied with parallel part copies"() {
+        given:
+        def source = storage.saveStream("file.bin", new ByteArrayInputStream(data))
+        storage.setCopyMultipartThreshold(128)
+        storage.setCopyPartSize(64)
+        cosClient.failPart(2, 1)
+
+        when:
+        def copy = storage.copyFile(source)
+
+        then:
+        copy.path != source.path
+        copy.fileName == "file.bin"
+        cosClient.objects[copy.path] == data
+        cosClient.pendingUploads.isEmpty()
+
+        when:
+        def moved = storage.moveFile(copy)
+
+        then:
+        cosClient.objects[moved.path] == data
+        !cosClient.objects.containsKey(copy.path)
+        !storage.fileExists(copy)
+    }
+}
@@ -0,0 +1,81 @@
+import cn.jmix.tencentfs.TencentFileStorage
+import com.qcloud.cos.http.HttpProtocol
+import io.jmix.core.FileRef
+import spock.util.concurrent.PollingConditions
+import test_support.InMemoryCosClient
+import test_support.StorageSpecification
+
+class CosClientTest extends StorageSpecification {
+
+    List<InMemoryCosClient> clients = []
+    TencentFileStorage storage
+
+    def setup() {
+        storage = newStorage([:]) { String region -> def client = new InMemoryCosClient(); clients << client; client }
+    }
+
+    def "endpoint URL selects the protocol and the host of the requests"() {
+        when:
+        def config = storage.createClientConfig("ap-test", endpointUrl)
+
+        then:
+        config.httpProtocol == protocol
+        config.endpointBuilder.buildGeneralApiEndpoint("bucket-1250000000") == endpoint
+
+        where:
+        endpointUrl                      || protocol           | endpoint
+        null                             || HttpProtocol.https | "bucket-1250000000.cos.ap-test.myqcloud.com"
+        "cos.ap-beijing.myqcloud.com"    || HttpProtocol.https | "bucket-1250000000.cos.ap-beijing.myqcloud.com"
+        "https://files.example.com"      || HttpProtocol.https | "files.example.com"
+        "HTTP://files.example.com:8080/" || HttpProtocol.http  | "files.example.com:8080"
+        "http://127.0.0.1:9000"          || HttpProtocol.http  | "127.0.0.1:9000"
+    }
+
+    def "replaced client is shut down after the operations in flight release it"() {
+        given:
+        clients[0].objects["file.txt"] = "content".bytes
+        def stream = storage.openStream(new FileRef("test", "file.txt", "file.txt"))
+        def lease = storage.acquireClient()
+
+        when:
+        storage.refreshOssClient()
+
+        then:
+        clients.size() == 2
+        !clients[0].shutdown
+
+        when: "the response received before the refresh is read and closed"
+        def content = stream.text
+
+        then:
+        content == "content"
+        !clients[0].shutdown
+
+        when:
+        lease.release()
+
+        then:
+        clients[0].shutdown
+        !clients[1].shutdown
+    }
+
+    def "replaced client is shut down after the drain timeout when a lease is not released"() {
+        given:
+        storage.setClientDrainTimeout(1)
+        storage.refreshOssClient()
+        def lease = storage.acquireClient()
+        def conditions = new PollingConditions(timeout: 5)
+
+        when:
+        storage.refreshOssClient()
+
+        then:
+        !clients[1].shutdown
+        conditions.eventually {
+            assert clients[1].shutdown
+        }
+
+        cleanup:
+        lease.release()
+    }
+}
@@ -0,0 +1,47 @@
+import cn.jmix.tencentfs.Crc64
+import spock.lang.Specification
+
+class Crc64Test extends Specification {
+
+    def "checksums that COS did not report are not verified"() {
+        expect:
+        Crc64.isReported(reported) == verifiable
+        Crc64.matches(42, reported) == matches
+
+        where:
+        reported | verifiable | matches
+        "42"     | true       | true
+        " 42 "   | true       | true
+        "43"     | true       | false
+        null     | false      | true
+        ""       | false      | true
+        "abc"    | false      | true
+    }
+
+    def "checksum matches the ECMA-182 check value"() {
+        given:
+        def checksum = new Crc64()
+
+        when:
+        checksum.update("123456789".bytes)
+
+        then:
+        checksum.value == 0x995DC9BBDF1939FAL
+    }
+
+    def "checksums of parts combine into the checksum of the whole"() {
+        given:
+        byte[] data = new byte[100_003]
+        new Random(42).nextBytes(data)
+        def whole = new Crc64()
+        whole.update(data)
+        def first = new Crc64()
+        first.update(data, 0, 40_000)
+        def second = new Crc64()
+        (40_000..<data.length).each { second.update(data[it]) }
+
+        expect:
+        Crc64.combine(first.value, second.value, data.length - 40_000) == whole.value
+        Crc64.combine(0, whole.value, data.length) == whole.value
+    }
+}
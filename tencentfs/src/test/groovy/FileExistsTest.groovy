@@ -0,0 +1,118 @@
+import cn.jmix.tencentfs.TencentFileStorage
+import com.qcloud.cos.model.ObjectMetadata
+import com.qcloud.cos.model.PutObjectRequest
+import io.jmix.core.FileRef
+import test_support.StorageSpecification
+
+class FileExistsTest extends StorageSpecification {
+
+    TencentFileStorage storage
+
+    def setup() {
+        storage = newStorage(metadataCacheTtl: 1, metadataCacheNegativeTtl: 1)
+    }
+
+    def "existence is checked by the exact key"() {
+        given:
+        put("abcd")
+
+        expect:
+        storage.fileExists(ref("abcd"))
+        !storage.fileExists(ref("abc"))
+        storage.statistics.metadataRequests == 2
+    }
+
+    def "metadata is read from the object"() {
+        given:
+        put("abc", "content")
+
+        when:
+        def metadata = storage.getObjectMetadata(ref("abc"))
+
+        then:
+        metadata.contentLength == 7
+        metadata.crc64 != null
+        storage.getObjectMetadata(ref("missing")) == null
+    }
+
+    def "existing objects are cached until the time to live expires"() {
+        given:
+        put("abc")
+
+        when:
+        def first = storage.fileExists(ref("abc"))
+        cosClient.deleteObject("bucket", "abc")
+        def cached = storage.fileExists(ref("abc"))
+
+        then:
+        first
+        cached
+        storage.statistics.metadataRequests == 1
+        storage.statistics.metadataCacheHits == 1
+
+        when:
+        Thread.sleep(1100)
+
+        then:
+        !storage.fileExists(ref("abc"))
+        storage.statistics.metadataRequests == 2
+    }
+
+    def "missing objects are cached until the negative time to live expires"() {
+        when:
+        def first = storage.fileExists(ref("abc"))
+        put("abc")
+        def cached = storage.fileExists(ref("abc"))
+
+        then:
+        !first
+        !cached
+        storage.statistics.metadataRequests == 1
+
+        when:
+        Thread.sleep(1100)
+
+        then:
+        storage.fileExists(ref("abc"))
+        storage.statistics.metadataRequests == 2
+    }
+
+    def "saved and removed files update the cache"() {
+        given:
+        def fileRef = storage.saveStream("file.txt", new ByteArrayInputStream("content".bytes))
+
+        expect:
+        storage.fileExists(fileRef)
+
+        when:
+        storage.removeFile(fileRef)
+
+        then:
+        !storage.fileExists(fileRef)
+    }
+
+    def "removed files are not reported when missing objects are not cached"() {
+        given:
+        storage = newStorage(metadataCacheTtl: 1, metadataCacheNegativeTtl: 0)
+        def fileRef = storage.saveStream("file.txt", new ByteArrayInputStream("content".bytes))
+        def other = storage.saveStream("other.txt", new ByteArrayInputStream("content".bytes))
+        [fileRef, other].each { assert storage.fileExists(it) }
+
+        when:
+        storage.removeFile(fileRef)
+        storage.removeFiles([other])
+
+        then:
+        !storage.fileExists(fileRef)
+        storage.getObjectMetadata(fileRef) == null
+        !storage.fileExists(other)
+    }
+
+    private void put(String key, String content = "") {
+        cosClient.putObject(new PutObjectRequest("bucket", key, new ByteArrayInputStream(content.bytes), new ObjectMetadata()))
+    }
+
+    private static FileRef ref(String key) {
+        new FileRef("test", key, key)
+    }
+}
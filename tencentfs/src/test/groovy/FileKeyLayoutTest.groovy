@@ -0,0 +1,55 @@
+import cn.jmix.tencentfs.ObjectKeyLayout
+import cn.jmix.tencentfs.TencentFileStorage
+import io.jmix.core.TimeSource
+import test_support.StorageSpecification
+
+import java.time.LocalDateTime
+import java.time.ZoneId
+
+class FileKeyLayoutTest extends StorageSpecification {
+
+    static final String UUID_PATTERN = /[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}/
+
+    Date now = Date.from(LocalDateTime.of(2021, 6, 1, 23, 59).atZone(ZoneId.systemDefault()).toInstant())
+    TencentFileStorage storage
+
+    def setup() {
+        storage = newStorage(timeSource: [currentTimestamp: { now }] as TimeSource)
+    }
+
+    def "date layout keeps the legacy keys"() {
+        expect:
+        storage.createFileKey("report.pdf") ==~ "2021/06/01/${UUID_PATTERN}\\.pdf"
+        storage.createFileKey("README") ==~ "2021/06/01/${UUID_PATTERN}"
+        storage.createFileKey("archive.") ==~ "2021/06/01/${UUID_PATTERN}"
+    }
+
+    def "date directory follows the current day"() {
+        when:
+        storage.createFileKey("report.pdf")
+        now = new Date(now.time + 60 * 60 * 1000)
+
+        then:
+        storage.createFileKey("report.pdf").startsWith("2021/06/02/")
+    }
+
+    def "hashed layout starts with the first digits of the UUID"() {
+        given:
+        storage.setKeyLayout(ObjectKeyLayout.HASHED_DATE)
+
+        when:
+        def key = storage.createFileKey("report.pdf")
+
+        then:
+        key ==~ "[0-9a-f]{2}/2021/06/01/${UUID_PATTERN}\\.pdf"
+        key.substring(0, 2) == key.substring(14, 16)
+    }
+
+    def "uuid layout has no directories"() {
+        given:
+        storage.setKeyLayout(ObjectKeyLayout.UUID_FIRST)
+
+        expect:
+        storage.createFileKey("report.pdf") ==~ "${UUID_PATTERN}\\.pdf"
+    }
+}
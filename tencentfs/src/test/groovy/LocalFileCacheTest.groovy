@@ -0,0 +1,138 @@
+import cn.jmix.tencentfs.LocalFileCache
+import cn.jmix.tencentfs.TencentStorageStatistics
+import test_support.StorageSpecification
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class LocalFileCacheTest extends StorageSpecification {
+
+    Path directory = Files.createTempDirectory("tencentfs-cache-test")
+
+    TencentStorageStatistics statistics = new TencentStorageStatistics()
+
+    def "content is downloaded on the first read and served from the disk afterwards"() {
+        given:
+        def cache = new LocalFileCache(directory, 1024, statistics)
+        def loads = new AtomicInteger()
+        def loader = { loads.incrementAndGet(); new ByteArrayInputStream("content".bytes) }
+
+        when:
+        def first = cache.openStream("a.txt", loader).withCloseable { it.text }
+        def second = cache.openStream("a.txt", loader).withCloseable { it.text }
+
+        then:
+        first == "content"
+        second == "content"
+        loads.get() == 1
+        statistics.cacheMisses == 1
+        statistics.cacheHits == 1
+        cache.size == 7
+    }
+
+    def "least recently used entries are evicted when the cache is full"() {
+        given:
+        def cache = new LocalFileCache(directory, 250, statistics)
+        def loads = new AtomicInteger()
+        def read = { String key -> cache.openStream(key, { loads.incrementAndGet(); new ByteArrayInputStream(new byte[100]) }).close() }
+
+        when:
+        read("a")
+        read("b")
+        read("a")
+        read("c")
+
+        then:
+        cache.size == 200
+        statistics.cacheEvictions == 1
+        loads.get() == 3
+
+        when:
+        read("a")
+        read("b")
+
+        then: "a is still cached and b was evicted"
+        loads.get() == 4
+        Files.list(directory).count() == 2
+    }
+
+    def "concurrent reads of a missing key wait for a single download"() {
+        given:
+        def cache = new LocalFileCache(directory, 1024, statistics)
+        def loads = new AtomicInteger()
+        def loading = new CountDownLatch(1)
+        def release = new CountDownLatch(1)
+        def loader = {
+            loads.incrementAndGet()
+            loading.countDown()
+            release.await()
+            new ByteArrayInputStream("content".bytes)
+        }
+        def executor = Executors.newFixedThreadPool(4)
+
+        when:
+        def first = executor.submit({ cache.openStream("a.txt", loader).withCloseable { it.text } } as Callable)
+        loading.await()
+        def others = (1..3).collect { executor.submit({ cache.openStream("a.txt", loader).withCloseable { it.text } } as Callable) }
+        Thread.sleep(100)
+        release.countDown()
+
+        then:
+        ([first] + others).collect { it.get(5, TimeUnit.SECONDS) } == ["content"] * 4
+        loads.get() == 1
+
+        cleanup:
+        executor.shutdownNow()
+    }
+
+    def "invalidated entries are downloaded again"() {
+        given:
+        def cache = new LocalFileCache(directory, 1024, statistics)
+        def content = "old"
+        def loader = { new ByteArrayInputStream(content.bytes) }
+        cache.openStream("a.txt", loader).close()
+
+        when:
+        cache.invalidate("a.txt")
+        content = "new"
+
+        then:
+        cache.size == 0
+        cache.openStream("a.txt", loader).withCloseable { it.text } == "new"
+    }
+
+    def "only files of the cache are removed from the directory on start"() {
+        given:
+        def cache = new LocalFileCache(directory, 1024, statistics)
+        cache.openStream("a.txt", { new ByteArrayInputStream("content".bytes) }).close()
+        def foreignFile = Files.write(directory.resolve("notes.txt"), "keep".bytes)
+        def cachedFiles = Files.list(directory).count()
+
+        when:
+        new LocalFileCache(directory, 1024, statistics)
+
+        then:
+        cachedFiles == 2
+        Files.list(directory).collect { it.fileName.toString() } == ["notes.txt"]
+        foreignFile.text == "keep"
+    }
+
+    def "removed files are no longer served from the cache of the storage"() {
+        given:
+        def storage = newStorage(cacheEnabled: true, cacheDirectory: directory.toString())
+        def fileRef = storage.saveStream("a.txt", new ByteArrayInputStream("content".bytes))
+        storage.openStream(fileRef).close()
+
+        when:
+        storage.removeFile(fileRef)
+
+        then:
+        storage.cache.size == 0
+        Files.list(directory).count() == 0
+    }
+}
@@ -0,0 +1,152 @@
+import cn.jmix.tencentfs.TencentFileStorage
+import io.jmix.core.FileStorageException
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import test_support.StorageSpecification
+
+import java.nio.file.Files
+
+class MultipartUploadTest extends StorageSpecification {
+
+    static final int CHUNK_SIZE = 64 * 1024
+
+    TencentFileStorage storage
+    byte[] data = new byte[4 * CHUNK_SIZE + 100]
+
+    def setup() {
+        new Random(42).nextBytes(data)
+        storage = newStorage(partRetryBackoff: 1, partRetryMaxBackoff: 5,
+                uploadStateDirectory: Files.createTempDirectory("tencentfs-test").toString())
+    }
+
+    def "small file is uploaded with a single PUT"() {
+        when:
+        def fileRef = storage.saveStream("small.txt", new ByteArrayInputStream("Text for testing.".bytes))
+
+        then:
+        cosClient.objects[fileRef.path] == "Text for testing.".bytes
+        storage.statistics.singlePutUploads == 1
+        storage.statistics.multipartUploads == 0
+        // the small file did not take a part buffer from the pool
+        storage.bufferPool.idleCount == 0
+    }
+
+    def "content below the multipart threshold is uploaded with a single PUT"() {
+        given:
+        storage = newStorage(multipartThreshold: 16)
+        byte[] content = Arrays.copyOf(data, length)
+        def file = Files.createTempFile("tencentfs-test", ".bin")
+        Files.write(file, content)
+
+        when:
+        def streamRef = storage.saveStream("file.bin", new ByteArrayInputStream(content))
+        def fileRef = storage.saveFile("file.bin", file)
+
+        then:
+        cosClient.objects[streamRef.path] == content
+        cosClient.objects[fileRef.path] == content
+        storage.statistics.singlePutUploads == singlePutUploads
+        storage.statistics.multipartUploads == multipartUploads
+
+        cleanup:
+        Files.deleteIfExists(file)
+
+        where:
+        length        || singlePutUploads | multipartUploads
+        16 * 1024 - 1 || 2                | 0
+        16 * 1024     || 0                | 2
+    }
+
+    def "idle part buffers are bounded by the upload parallelism"() {
+        given:
+        storage.setUploadParallelism(2)
+        storage.refreshOssClient()
+
+        when:
+        def fileRef = storage.saveStream("file.bin", new ByteArrayInputStream(data))
+
+        then:
+        cosClient.objects[fileRef.path] == data
+        storage.bufferPool.idleCount <= 2
+    }
+
+    def "failed parts are retried"() {
+        given:
+        cosClient.failPart(2, 2)
+
+        when:
+        def fileRef = storage.saveStream("file.bin", new ByteArrayInputStream(data))
+
+        then:
+        cosClient.objects[fileRef.path] == data
+        cosClient.getPartUploadCalls(2) == 3
+        storage.statistics.partRetries == 2
+        storage.statistics.slowDowns == 2
+    }
+
+    def "upload is aborted when a part keeps failing"() {
+        given:
+        cosClient.failPart(3, Integer.MAX_VALUE)
+
+        when:
+        storage.saveStream("file.bin", new ByteArrayInputStream(data))
+
+        then:
+        thrown(FileStorageException)
+        cosClient.abortedUploads.size() == 1
+        cosClient.pendingUploads.isEmpty()
+        cosClient.objects.isEmpty()
+    }
+
+    def "completed and aborted uploads are no longer in progress"() {
+        when:
+        storage.saveStream("file.bin", new ByteArrayInputStream(data))
+        cosClient.failPart(3, 10)
+        storage.saveStream("failed.bin", new ByteArrayInputStream(data))
+
+        then:
+        thrown(FileStorageException)
+        cosClient.abortedUploads.size() == 1
+        storage.uploadsInProgress.isEmpty()
+    }
+
+    def "local file is uploaded from file regions"() {
+        given:
+        def file = Files.createTempFile("tencentfs-test", ".bin")
+        Files.write(file, data)
+        cosClient.failPart(4, 1)
+
+        when:
+        def fileRef = storage.saveFile("file.bin", file)
+
+        then:
+        cosClient.objects[fileRef.path] == data
+        cosClient.getPartUploadCalls(5) == 1
+        storage.statistics.multipartUploads == 1
+        storage.statistics.partRetries == 1
+
+        cleanup:
+        Files.deleteIfExists(file)
+    }
+
+    def "adaptive uploads size parts from the content length"() {
+        given:
+        def registry = new SimpleMeterRegistry()
+        storage.bindMetrics(registry)
+        storage.setAdaptivePartSize(true)
+        storage.refreshOssClient()
+        byte[] content = new byte[3 * 1024 * 1024 + 100]
+        new Random(7).nextBytes(content)
+
+        when:
+        def fileRef = storage.saveStream("file.bin", new ByteArrayInputStream(content))
+
+        then:
+        cosClient.objects[fileRef.path] == content
+        cosClient.getPartUploadCalls(4) == 1
+        cosClient.getPartUploadCalls(5) == 0
+        registry.get("tencentfs.upload.part.size").tag("mode", "adaptive").summary().max() == 1024 * 1024
+        registry.get("tencentfs.upload.parallelism").tag("mode", "adaptive").summary().max() == 4
+        registry.get("tencentfs.upload.throughput").tag("mode", "adaptive").summary().count() == 1
+        registry.get("tencentfs.part.throughput").gauge().value() > 0
+    }
+}
@@ -0,0 +1,36 @@
+import cn.jmix.tencentfs.PartBufferPool
+import spock.lang.Specification
+
+class PartBufferPoolTest extends Specification {
+
+    PartBufferPool pool = new PartBufferPool(1024, 2)
+
+    def "released buffers are reused"() {
+        when:
+        def buffer = pool.acquire()
+        pool.release(buffer)
+
+        then:
+        pool.acquire().is(buffer)
+    }
+
+    def "at most maxIdle buffers are kept"() {
+        given:
+        def buffers = (1..4).collect { pool.acquire() }
+
+        when:
+        buffers.each { pool.release(it) }
+
+        then:
+        pool.idleCount == 2
+    }
+
+    def "buffers of another size are not kept"() {
+        when:
+        pool.release(new byte[512])
+
+        then:
+        pool.idleCount == 0
+        pool.acquire().length == 1024
+    }
+}
@@ -0,0 +1,85 @@
+import cn.jmix.tencentfs.TencentFileStorage
+import com.qcloud.cos.model.ObjectMetadata
+import com.qcloud.cos.model.PutObjectRequest
+import io.jmix.core.FileRef
+import spock.util.concurrent.PollingConditions
+import test_support.StorageSpecification
+
+class RangedDownloadTest extends StorageSpecification {
+
+    static final int RANGE_SIZE = 64 * 1024
+
+    TencentFileStorage storage
+    byte[] data = new byte[4 * RANGE_SIZE + 100]
+    FileRef fileRef = new FileRef("test", "file.bin", "file.bin")
+
+    def setup() {
+        new Random(42).nextBytes(data)
+        cosClient.putObject(new PutObjectRequest("bucket", "file.bin", new ByteArrayInputStream(data), new ObjectMetadata()))
+        storage = newStorage(downloadRangeThreshold: 1, downloadRangeSize: 64, downloadPrefetch: 2, metadataCacheSize: 0)
+    }
+
+    def "ranges fetched concurrently are read in order"() {
+        when:
+        def content = storage.openStream(fileRef).withCloseable { it.bytes }
+
+        then:
+        content == data
+        cosClient.rangeRequests == 5
+    }
+
+    def "reads of any size cross range boundaries"() {
+        given:
+        def out = new ByteArrayOutputStream()
+        byte[] buffer = new byte[1000]
+
+        when:
+        storage.openStream(fileRef).withCloseable { stream ->
+            out.write(stream.read())
+            int count
+            while ((count = stream.read(buffer, 0, buffer.length)) != -1) {
+                out.write(buffer, 0, count)
+                int b = stream.read()
+                if (b != -1) {
+                    out.write(b)
+                }
+            }
+        }
+
+        then:
+        out.toByteArray() == data
+    }
+
+    def "an object overwritten while it is read fails the stream"() {
+        given:
+        def stream = storage.openStream(fileRef)
+        byte[] changed = new byte[data.length]
+        new Random(7).nextBytes(changed)
+
+        when: "ranges after the first two are requested once the object is overwritten"
+        cosClient.putObject(new PutObjectRequest("bucket", "file.bin", new ByteArrayInputStream(changed), new ObjectMetadata()))
+        stream.withCloseable { it.bytes }
+
+        then:
+        def e = thrown(IOException)
+        e.cause.message.contains("was modified while it was read")
+        cosClient.rangeRequests <= 3
+    }
+
+    def "closing the stream early returns every buffer to the pool"() {
+        given:
+        cosClient.delayReads(100)
+        def conditions = new PollingConditions(timeout: 5)
+
+        when:
+        def stream = storage.openStream(fileRef)
+        stream.read(new byte[10])
+        stream.close()
+
+        then:
+        conditions.eventually {
+            assert storage.rangeBufferPool.idleCount == storage.rangeBufferPool.allocatedCount
+        }
+        storage.rangeBufferPool.allocatedCount <= 3
+    }
+}
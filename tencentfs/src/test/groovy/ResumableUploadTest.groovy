@@ -0,0 +1,93 @@
+import cn.jmix.tencentfs.TencentFileStorage
+import com.qcloud.cos.model.InitiateMultipartUploadRequest
+import io.jmix.core.FileStorageException
+import test_support.StorageSpecification
+
+import java.nio.file.Files
+import java.util.concurrent.TimeUnit
+
+class ResumableUploadTest extends StorageSpecification {
+
+    static final int CHUNK_SIZE = 64 * 1024
+
+    TencentFileStorage storage
+    byte[] data = new byte[4 * CHUNK_SIZE + 100]
+
+    def setup() {
+        new Random(42).nextBytes(data)
+        storage = newStorage(partRetryBackoff: 1, partRetryMaxBackoff: 5,
+                uploadStateDirectory: Files.createTempDirectory("tencentfs-test").toString())
+    }
+
+    def "interrupted upload is resumed without sending stored parts again"() {
+        given:
+        cosClient.failPart(3, Integer.MAX_VALUE)
+
+        when:
+        storage.saveStream("file.bin", new ByteArrayInputStream(data), "upload-token")
+
+        then:
+        thrown(FileStorageException)
+        cosClient.abortedUploads.isEmpty()
+        cosClient.pendingUploads.size() == 1
+
+        when:
+        cosClient.clearFaults()
+        def fileRef = storage.saveStream("file.bin", new ByteArrayInputStream(data), "upload-token")
+
+        then:
+        cosClient.objects[fileRef.path] == data
+        cosClient.getPartUploadCalls(1) == 1
+        cosClient.getPartUploadCalls(3) == 5
+        cosClient.pendingUploads.isEmpty()
+        storage.statistics.resumedUploads == 1
+    }
+
+    def "sweep aborts old uploads that are not in progress"() {
+        given:
+        def inProgress = cosClient.initiateMultipartUpload(new InitiateMultipartUploadRequest("bucket", "in-progress.bin")).uploadId
+        def target = storage.acquireClient()
+        storage.uploadStarted(target, "in-progress.bin", inProgress)
+        target.release()
+        def orphaned = cosClient.initiateMultipartUpload(new InitiateMultipartUploadRequest("bucket", "orphaned.bin")).uploadId
+        def recent = cosClient.initiateMultipartUpload(new InitiateMultipartUploadRequest("bucket", "recent.bin")).uploadId
+        cosClient.ageUpload(inProgress, TimeUnit.HOURS.toMillis(25))
+        cosClient.ageUpload(orphaned, TimeUnit.HOURS.toMillis(25))
+
+        when:
+        def aborted = storage.sweepMultipartUploads()
+
+        then:
+        aborted == 1
+        cosClient.abortedUploads == [orphaned] as Set
+        storage.listMultipartUploads().collectEntries { [it.uploadId, it.inProgress] } == [(inProgress): true, (recent): false]
+        storage.uploadSweeper.abortedUploads == 1
+        storage.uploadSweeper.listedUploads == 3
+    }
+
+    def "sweep deletes the state of the resumable uploads it aborts"() {
+        given:
+        cosClient.failPart(3, Integer.MAX_VALUE)
+        try {
+            storage.saveStream("file.bin", new ByteArrayInputStream(data), "upload-token")
+        } catch (FileStorageException ignored) {
+        }
+        def uploadId = cosClient.pendingUploads.first()
+        cosClient.ageUpload(uploadId, TimeUnit.HOURS.toMillis(25))
+        cosClient.clearFaults()
+
+        when:
+        def aborted = storage.sweepMultipartUploads()
+
+        then:
+        aborted == 1
+        storage.uploadStateRepository.load("upload-token") == null
+
+        when:
+        def fileRef = storage.saveStream("file.bin", new ByteArrayInputStream(data), "upload-token")
+
+        then:
+        cosClient.objects[fileRef.path] == data
+        storage.statistics.resumedUploads == 0
+    }
+}
@@ -0,0 +1,74 @@
+import cn.jmix.tencentfs.ShardRouter
+import cn.jmix.tencentfs.TencentFileStorage
+import cn.jmix.tencentfs.TencentFileStorageProperties
+import io.jmix.core.FileRef
+import test_support.InMemoryCosClient
+import test_support.StorageSpecification
+
+class ShardedStorageTest extends StorageSpecification {
+
+    // one client per region, each region holds a single bucket in these tests
+    Map<String, InMemoryCosClient> clients = [:].withDefault { new InMemoryCosClient() }
+    TencentFileStorage storage
+
+    def setup() {
+        storage = newStorage(shards: [
+                new TencentFileStorageProperties.Shard("a", "bucket-a", "ap-a", "", 1, []),
+                new TencentFileStorageProperties.Shard("b", "bucket-b", "ap-b", "", 1, [
+                        new TencentFileStorageProperties.Replica("bucket-b-copy", "ap-a", "")
+                ])
+        ], localRegion: "ap-a") { String region -> clients[region] }
+    }
+
+    def "new files are spread across the shards"() {
+        when:
+        def fileRefs = (1..200).collect { storage.saveStream("file.txt", new ByteArrayInputStream("content".bytes)) }
+
+        then:
+        fileRefs.every { it.path.startsWith("a/") || it.path.startsWith("b/") }
+        clients["ap-a"].objects.size() + clients["ap-b"].objects.size() == 200
+        clients["ap-a"].objects.size() > 50
+        clients["ap-b"].objects.size() > 50
+        clients["ap-test"].objects.isEmpty()
+    }
+
+    def "reads prefer the replica in the local region"() {
+        given:
+        def fileRef = (1..50).collect { storage.saveStream("file.txt", new ByteArrayInputStream("content".bytes)) }
+                .find { it.path.startsWith("b/") }
+
+        when:
+        // COS replication copies the object to the replica bucket
+        clients["ap-a"].objects[fileRef.path] = "replicated".bytes
+
+        then:
+        storage.openStream(fileRef).text == "replicated"
+
+        when:
+        storage.removeFile(fileRef)
+
+        then:
+        !clients["ap-b"].objects.containsKey(fileRef.path)
+    }
+
+    def "files saved before sharding stay in the default bucket"() {
+        given:
+        clients["ap-test"].objects["2021/06/01/legacy.txt"] = "legacy".bytes
+        def fileRef = new FileRef("test", "2021/06/01/legacy.txt", "legacy.txt")
+
+        expect:
+        storage.fileExists(fileRef)
+        storage.openStream(fileRef).text == "legacy"
+    }
+
+    def "shard ids that can be the first directory of a key are rejected"() {
+        when:
+        new ShardRouter.Shard(id, 1, null, null)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        id << ["2021", "ab", "0f", "", "a/b"]
+    }
+}
@@ -0,0 +1,61 @@
+import cn.jmix.tencentfs.TencentFileStorage
+import io.jmix.core.FileRef
+import io.jmix.core.FileStorageException
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import test_support.StorageSpecification
+
+import java.nio.file.Files
+
+class StorageMetricsTest extends StorageSpecification {
+
+    static final int CHUNK_SIZE = 64 * 1024
+
+    TencentFileStorage storage
+    byte[] data = new byte[4 * CHUNK_SIZE + 100]
+
+    def setup() {
+        new Random(42).nextBytes(data)
+        storage = newStorage(partRetryBackoff: 1, partRetryMaxBackoff: 5,
+                uploadStateDirectory: Files.createTempDirectory("tencentfs-test").toString())
+    }
+
+    def "uploads and failures are recorded in metrics"() {
+        given:
+        def registry = new SimpleMeterRegistry()
+        storage.bindMetrics(registry)
+        cosClient.failPart(2, 1)
+
+        when:
+        def fileRef = storage.saveStream("file.bin", new ByteArrayInputStream(data))
+        storage.openStream(fileRef).withCloseable { it.bytes }
+        storage.openStream(new FileRef("test", "missing.bin", "missing.bin"))
+
+        then:
+        thrown(FileStorageException)
+        registry.get("tencentfs.operation").tags("storage", "test", "operation", "save", "outcome", "success").timer().count() == 1
+        registry.get("tencentfs.part.upload").timer().count() == 5
+        registry.get("tencentfs.part.retries").functionCounter().count() == 1
+        registry.get("tencentfs.bytes").tag("direction", "out").counter().count() == data.length
+        registry.get("tencentfs.bytes").tag("direction", "in").counter().count() == data.length
+        registry.get("tencentfs.operation.errors").tags("operation", "open", "cause", "NoSuchKey").counter().count() == 1
+        registry.get("tencentfs.uploads.active").gauge().value() == 0
+    }
+
+    def "metrics are recorded in every bound registry"() {
+        given:
+        def first = new SimpleMeterRegistry()
+        def second = new SimpleMeterRegistry()
+        storage.bindMetrics(first)
+        storage.bindMetrics(second)
+        storage.bindMetrics(first)
+
+        when:
+        storage.saveStream("file.bin", new ByteArrayInputStream(data))
+
+        then:
+        [first, second].every { registry ->
+            registry.get("tencentfs.operation").tags("operation", "save", "outcome", "success").timer().count() == 1 &&
+                    registry.get("tencentfs.bytes").tag("direction", "out").counter().count() == data.length
+        }
+    }
+}
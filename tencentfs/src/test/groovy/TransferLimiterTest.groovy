@@ -0,0 +1,90 @@
+import cn.jmix.tencentfs.TencentStorageStatistics
+import cn.jmix.tencentfs.TokenBucket
+import cn.jmix.tencentfs.TransferLimiter
+import cn.jmix.tencentfs.TransferPriority
+import com.qcloud.cos.exception.CosServiceException
+import spock.lang.Specification
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class TransferLimiterTest extends Specification {
+
+    def "bucket keeps to its rate after the burst"() {
+        given:
+        def bucket = new TokenBucket(1000)
+        bucket.acquire(1000, TransferPriority.INTERACTIVE)
+
+        when:
+        long start = System.nanoTime()
+        5.times { bucket.acquire(100, TransferPriority.INTERACTIVE) }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+
+        then:
+        elapsed >= 350
+    }
+
+    def "batch requests wait for interactive ones"() {
+        given:
+        def bucket = new TokenBucket(100)
+        bucket.acquire(150, TransferPriority.INTERACTIVE)
+        def order = new CopyOnWriteArrayList<String>()
+        def batchStarted = new CountDownLatch(1)
+
+        when:
+        def batch = Thread.start {
+            batchStarted.countDown()
+            bucket.acquire(10, TransferPriority.BATCH)
+            order << "batch"
+        }
+        batchStarted.await()
+        Thread.sleep(50)
+        def interactive = Thread.start {
+            bucket.acquire(10, TransferPriority.INTERACTIVE)
+            order << "interactive"
+        }
+        batch.join(5000)
+        interactive.join(5000)
+
+        then:
+        order == ["interactive", "batch"]
+    }
+
+    def "slow down responses pause requests and the pause decays"() {
+        given:
+        def statistics = new TencentStorageStatistics()
+        def limiter = new TransferLimiter(0, 0, 0, 100, 400, statistics)
+        def slowDown = new CosServiceException("Slow down")
+        slowDown.statusCode = 503
+        slowDown.errorCode = "SlowDown"
+
+        when:
+        3.times { limiter.requestFailed(slowDown) }
+        limiter.requestFailed(new IOException())
+
+        then:
+        statistics.slowDowns == 3
+        limiter.slowDownBackoff == 400
+
+        when:
+        long start = System.nanoTime()
+        limiter.acquireRequest(TransferPriority.INTERACTIVE)
+
+        then:
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 150
+
+        when:
+        3.times { limiter.requestSucceeded() }
+
+        then:
+        limiter.slowDownBackoff == 0
+    }
+
+    def "priority applies inside the action only"() {
+        expect:
+        TransferPriority.current() == TransferPriority.INTERACTIVE
+        TransferPriority.BATCH.call { TransferPriority.current() } == TransferPriority.BATCH
+        TransferPriority.current() == TransferPriority.INTERACTIVE
+    }
+}
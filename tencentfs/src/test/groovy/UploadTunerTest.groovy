@@ -0,0 +1,79 @@
+import cn.jmix.tencentfs.UploadTuner
+import spock.lang.Specification
+
+class UploadTunerTest extends Specification {
+
+    static final int MB = 1024 * 1024
+
+    UploadTuner tuner = new UploadTuner(true, 8 * MB, 5, 16, 8 * MB)
+
+    def "unknown and small contents keep the default settings"() {
+        expect:
+        !tuner.plan(-1).adaptive
+        tuner.plan(-1).partSize == 8 * MB
+        tuner.plan(-1).parallelism == 5
+        !tuner.plan(4 * MB).adaptive
+    }
+
+    def "mid-size content is split across the upload threads"() {
+        when:
+        def plan = tuner.plan(40 * MB)
+
+        then:
+        plan.partSize == 4 * MB
+        plan.parallelism == 10
+    }
+
+    def "large content stays below the part limit of COS"() {
+        given:
+        long size = 200L * 1024 * MB
+
+        when:
+        def plan = tuner.plan(size)
+
+        then:
+        plan.partSize == 32 * MB
+        size / plan.partSize <= 10000
+        plan.parallelism == 1
+    }
+
+    def "part buffers in flight stay within the heap budget"() {
+        given:
+        if (throughput > 0) {
+            tuner.partUploaded(1_000_000_000L, throughput)
+        }
+
+        when:
+        def plan = tuner.plan(size)
+
+        then:
+        (long) plan.partSize * plan.parallelism <= tuner.heapBudget
+
+        where:
+        size              | throughput
+        40L * MB          | 0
+        1024L * MB        | 0
+        1024L * MB        | 8 * MB
+        1024L * MB        | 64 * MB
+        20L * 1024 * MB   | 0
+        200L * 1024 * MB  | 0
+    }
+
+    def "uploads with a chosen part size stay within the heap budget"() {
+        expect:
+        tuner.planFor(8 * MB).parallelism == 5
+        tuner.planFor(4 * MB).parallelism == 5
+        tuner.planFor(16 * MB).parallelism == 2
+        tuner.planFor(32 * MB).parallelism == 1
+        tuner.planFor(64 * MB).parallelism == 1
+    }
+
+    def "part size follows the observed throughput"() {
+        given:
+        tuner.partUploaded(1_000_000_000L, 8 * MB)
+
+        expect:
+        tuner.partThroughput == 8 * MB
+        tuner.plan(1024L * MB).partSize == 16 * MB
+    }
+}
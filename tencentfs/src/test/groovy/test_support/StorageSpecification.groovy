@@ -0,0 +1,44 @@
+package test_support
+
+import cn.jmix.tencentfs.TencentFileStorage
+import com.qcloud.cos.COSClient
+import com.qcloud.cos.ClientConfig
+import com.qcloud.cos.auth.COSCredentials
+import io.jmix.core.TimeSource
+import spock.lang.Specification
+
+/**
+ * Base of the specifications that run a storage against {@link InMemoryCosClient}.
+ * Storages created with {@link #newStorage} are shut down after each feature.
+ */
+abstract class StorageSpecification extends Specification {
+
+    InMemoryCosClient cosClient = new InMemoryCosClient()
+
+    private final List<TencentFileStorage> storages = []
+
+    /**
+     * Creates a storage "test" of the bucket "bucket" in the region "ap-test", sets the given properties
+     * and creates its clients. Each client is the one returned for the region of its configuration,
+     * {@link #cosClient} by default.
+     */
+    protected TencentFileStorage newStorage(Map<String, ?> properties = [:],
+                                            Closure<COSClient> clientForRegion = { String region -> cosClient }) {
+        def storage = new TencentFileStorage("test", "id", "key", "bucket", "ap-test", 64, null) {
+            @Override
+            protected COSClient createCosClient(COSCredentials credentials, ClientConfig clientConfig) {
+                return clientForRegion.call(clientConfig.region.regionName)
+            }
+        }
+        storage.timeSource = [currentTimestamp: { new Date() }] as TimeSource
+        properties.each { name, value -> storage."$name" = value }
+        storage.refreshOssClient()
+        storages << storage
+        storage
+    }
+
+    def cleanup() {
+        // shuts down the clients as well
+        storages*.shutdown()
+    }
+}
@@ -0,0 +1,429 @@
+package test_support;
+
+import cn.jmix.tencentfs.Crc64;
+import com.qcloud.cos.COSClient;
+import com.qcloud.cos.ClientConfig;
+import com.qcloud.cos.auth.BasicCOSCredentials;
+import com.qcloud.cos.exception.CosServiceException;
+import com.qcloud.cos.exception.MultiObjectDeleteException;
+import com.qcloud.cos.model.*;
+import com.qcloud.cos.region.Region;
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local stand-in for COS that keeps objects in memory and injects faults into part uploads.
+ */
+public class InMemoryCosClient extends COSClient {
+
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    // checksums computed when objects are stored, so changing the content of an object simulates corruption
+    private final Map<String, String> checksums = new ConcurrentHashMap<>();
+    private final Map<String, String> uploadKeys = new ConcurrentHashMap<>();
+    private final Map<String, Date> uploadInitiated = new ConcurrentHashMap<>();
+    private final Map<String, Map<Integer, byte[]>> uploadParts = new ConcurrentHashMap<>();
+    private final Set<String> abortedUploads = ConcurrentHashMap.newKeySet();
+    private final Map<Integer, AtomicInteger> partFailures = new ConcurrentHashMap<>();
+    private final Map<Integer, AtomicInteger> partUploadCalls = new ConcurrentHashMap<>();
+    private final Map<Integer, AtomicInteger> partCorruptions = new ConcurrentHashMap<>();
+    private final AtomicInteger uploadIdSequence = new AtomicInteger();
+    private final AtomicInteger rangeRequests = new AtomicInteger();
+    private final Set<String> undeletableKeys = ConcurrentHashMap.newKeySet();
+    private final List<Integer> deleteBatchSizes = Collections.synchronizedList(new ArrayList<>());
+    private volatile boolean encodeDeletedKeys;
+    private volatile long readDelay;
+    private volatile boolean shutdown;
+
+    public InMemoryCosClient() {
+        super(new BasicCOSCredentials("test", "test"), new ClientConfig(new Region("ap-test")));
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        super.shutdown();
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    /**
+     * Makes the next {@code times} uploads or copies of the given part fail with 503 SlowDown.
+     */
+    public void failPart(int partNumber, int times) {
+        partFailures.put(partNumber, new AtomicInteger(times));
+    }
+
+    /**
+     * Makes the next {@code times} uploads of the given part store a damaged copy of the sent data.
+     */
+    public void corruptPart(int partNumber, int times) {
+        partCorruptions.put(partNumber, new AtomicInteger(times));
+    }
+
+    /**
+     * Makes every GET request wait for the given time before it returns.
+     */
+    public void delayReads(long millis) {
+        readDelay = millis;
+    }
+
+    public int getRangeRequests() {
+        return rangeRequests.get();
+    }
+
+    /**
+     * Makes multi-object delete requests report an AccessDenied error for the given key.
+     */
+    public void failDelete(String key) {
+        undeletableKeys.add(key);
+    }
+
+    /**
+     * Makes multi-object delete responses report URL-encoded keys, like COS does for keys with special characters.
+     */
+    public void encodeDeletedKeys() {
+        encodeDeletedKeys = true;
+    }
+
+    /**
+     * Number of keys of each multi-object delete request.
+     */
+    public List<Integer> getDeleteBatchSizes() {
+        return deleteBatchSizes;
+    }
+
+    public void clearFaults() {
+        partFailures.clear();
+        partCorruptions.clear();
+    }
+
+    public int getPartUploadCalls(int partNumber) {
+        AtomicInteger calls = partUploadCalls.get(partNumber);
+        return calls == null ? 0 : calls.get();
+    }
+
+    public Map<String, byte[]> getObjects() {
+        return objects;
+    }
+
+    public Set<String> getAbortedUploads() {
+        return abortedUploads;
+    }
+
+    public Set<String> getPendingUploads() {
+        return uploadParts.keySet();
+    }
+
+    @Override
+    public PutObjectResult putObject(PutObjectRequest putObjectRequest) {
+        byte[] data = putObjectRequest.getFile() != null
+                ? readFile(putObjectRequest.getFile(), 0, putObjectRequest.getFile().length())
+                : readAll(putObjectRequest.getInputStream());
+        objects.put(putObjectRequest.getKey(), data);
+        checksums.put(putObjectRequest.getKey(), crc64(data));
+        PutObjectResult result = new PutObjectResult();
+        result.setETag(UUID.randomUUID().toString());
+        result.setCrc64Ecma(crc64(data));
+        return result;
+    }
+
+    @Override
+    public InitiateMultipartUploadResult initiateMultipartUpload(InitiateMultipartUploadRequest request) {
+        String uploadId = "upload-" + uploadIdSequence.incrementAndGet();
+        uploadKeys.put(uploadId, request.getKey());
+        uploadInitiated.put(uploadId, new Date());
+        uploadParts.put(uploadId, new ConcurrentSkipListMap<>());
+        InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+        result.setBucketName(request.getBucketName());
+        result.setKey(request.getKey());
+        result.setUploadId(uploadId);
+        return result;
+    }
+
+    @Override
+    public UploadPartResult uploadPart(UploadPartRequest uploadPartRequest) {
+        int partNumber = uploadPartRequest.getPartNumber();
+        partUploadCalls.computeIfAbsent(partNumber, number -> new AtomicInteger()).incrementAndGet();
+        AtomicInteger failures = partFailures.get(partNumber);
+        if (failures != null && failures.getAndDecrement() > 0) {
+            throw serviceException(503, "SlowDown");
+        }
+        Map<Integer, byte[]> parts = getParts(uploadPartRequest.getUploadId());
+        byte[] data = uploadPartRequest.getFile() != null
+                ? readFile(uploadPartRequest.getFile(), uploadPartRequest.getFileOffset(), uploadPartRequest.getPartSize())
+                : readAll(uploadPartRequest.getInputStream());
+        AtomicInteger corruptions = partCorruptions.get(partNumber);
+        if (corruptions != null && corruptions.getAndDecrement() > 0) {
+            data[data.length / 2] ^= 1;
+        }
+        parts.put(partNumber, data);
+        UploadPartResult result = new UploadPartResult();
+        result.setPartNumber(partNumber);
+        result.setETag(etag(data));
+        result.setCrc64Ecma(crc64(data));
+        return result;
+    }
+
+    @Override
+    public CopyPartResult copyPart(CopyPartRequest copyPartRequest) {
+        int partNumber = copyPartRequest.getPartNumber();
+        partUploadCalls.computeIfAbsent(partNumber, number -> new AtomicInteger()).incrementAndGet();
+        AtomicInteger failures = partFailures.get(partNumber);
+        if (failures != null && failures.getAndDecrement() > 0) {
+            throw serviceException(503, "SlowDown");
+        }
+        byte[] source = objects.get(copyPartRequest.getSourceKey());
+        if (source == null) {
+            throw serviceException(404, "NoSuchKey");
+        }
+        byte[] data = Arrays.copyOfRange(source, (int) (long) copyPartRequest.getFirstByte(),
+                (int) (long) copyPartRequest.getLastByte() + 1);
+        getParts(copyPartRequest.getUploadId()).put(partNumber, data);
+        CopyPartResult result = new CopyPartResult();
+        result.setPartNumber(partNumber);
+        result.setETag(etag(data));
+        return result;
+    }
+
+    @Override
+    public CopyObjectResult copyObject(CopyObjectRequest copyObjectRequest) {
+        byte[] source = objects.get(copyObjectRequest.getSourceKey());
+        if (source == null) {
+            throw serviceException(404, "NoSuchKey");
+        }
+        objects.put(copyObjectRequest.getDestinationKey(), source.clone());
+        checksums.put(copyObjectRequest.getDestinationKey(), crc64(source));
+        CopyObjectResult result = new CopyObjectResult();
+        result.setETag(etag(source));
+        return result;
+    }
+
+    @Override
+    public PartListing listParts(ListPartsRequest listPartsRequest) {
+        Map<Integer, byte[]> parts = getParts(listPartsRequest.getUploadId());
+        List<PartSummary> summaries = new ArrayList<>();
+        for (Map.Entry<Integer, byte[]> entry : parts.entrySet()) {
+            PartSummary summary = new PartSummary();
+            summary.setPartNumber(entry.getKey());
+            summary.setETag(etag(entry.getValue()));
+            summary.setSize(entry.getValue().length);
+            summaries.add(summary);
+        }
+        PartListing listing = new PartListing();
+        listing.setParts(summaries);
+        listing.setTruncated(false);
+        return listing;
+    }
+
+    @Override
+    public CompleteMultipartUploadResult completeMultipartUpload(CompleteMultipartUploadRequest request) {
+        Map<Integer, byte[]> parts = getParts(request.getUploadId());
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        for (PartETag partETag : request.getPartETags()) {
+            byte[] data = parts.get(partETag.getPartNumber());
+            if (data == null || !etag(data).equals(partETag.getETag())) {
+                throw serviceException(400, "InvalidPart");
+            }
+            content.write(data, 0, data.length);
+        }
+        objects.put(request.getKey(), content.toByteArray());
+        checksums.put(request.getKey(), crc64(content.toByteArray()));
+        uploadParts.remove(request.getUploadId());
+        uploadKeys.remove(request.getUploadId());
+        uploadInitiated.remove(request.getUploadId());
+        CompleteMultipartUploadResult result = new CompleteMultipartUploadResult();
+        result.setKey(request.getKey());
+        result.setCrc64Ecma(crc64(content.toByteArray()));
+        return result;
+    }
+
+    @Override
+    public void abortMultipartUpload(AbortMultipartUploadRequest request) {
+        getParts(request.getUploadId());
+        uploadParts.remove(request.getUploadId());
+        uploadKeys.remove(request.getUploadId());
+        uploadInitiated.remove(request.getUploadId());
+        abortedUploads.add(request.getUploadId());
+    }
+
+    /**
+     * Moves the initiation time of an upload into the past.
+     */
+    public void ageUpload(String uploadId, long millis) {
+        uploadInitiated.computeIfPresent(uploadId, (id, initiated) -> new Date(initiated.getTime() - millis));
+    }
+
+    @Override
+    public MultipartUploadListing listMultipartUploads(ListMultipartUploadsRequest request) {
+        List<MultipartUpload> uploads = new ArrayList<>();
+        for (Map.Entry<String, String> entry : uploadKeys.entrySet()) {
+            MultipartUpload upload = new MultipartUpload();
+            upload.setUploadId(entry.getKey());
+            upload.setKey(entry.getValue());
+            upload.setInitiated(uploadInitiated.get(entry.getKey()));
+            uploads.add(upload);
+        }
+        MultipartUploadListing listing = new MultipartUploadListing();
+        listing.setBucketName(request.getBucketName());
+        listing.setMultipartUploads(uploads);
+        listing.setTruncated(false);
+        return listing;
+    }
+
+    @Override
+    public COSObject getObject(GetObjectRequest getObjectRequest) {
+        byte[] data = objects.get(getObjectRequest.getKey());
+        if (data == null) {
+            throw serviceException(404, "NoSuchKey");
+        }
+        List<String> matchingETags = getObjectRequest.getMatchingETagConstraints();
+        if (matchingETags != null && !matchingETags.isEmpty() && !matchingETags.contains(etag(data))) {
+            throw serviceException(412, "PreconditionFailed");
+        }
+        if (readDelay > 0) {
+            try {
+                Thread.sleep(readDelay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        COSObject object = new COSObject();
+        object.setKey(getObjectRequest.getKey());
+        object.getObjectMetadata().setHeader("x-cos-hash-crc64ecma", getChecksum(getObjectRequest.getKey(), data));
+        long[] range = getObjectRequest.getRange();
+        if (range != null) {
+            rangeRequests.incrementAndGet();
+            int start = (int) Math.min(range[0], data.length);
+            int end = (int) Math.min(range[1], data.length - 1L);
+            int length = Math.max(0, end - start + 1);
+            object.getObjectMetadata().setContentLength(length);
+            object.setObjectContent(new ByteArrayInputStream(data, start, length));
+        } else {
+            object.getObjectMetadata().setContentLength(data.length);
+            object.setObjectContent(new ByteArrayInputStream(data));
+        }
+        return object;
+    }
+
+    @Override
+    public ObjectMetadata getObjectMetadata(GetObjectMetadataRequest getObjectMetadataRequest) {
+        byte[] data = objects.get(getObjectMetadataRequest.getKey());
+        if (data == null) {
+            throw serviceException(404, "NoSuchKey");
+        }
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(data.length);
+        metadata.setHeader("ETag", etag(data));
+        metadata.setHeader("x-cos-hash-crc64ecma", getChecksum(getObjectMetadataRequest.getKey(), data));
+        return metadata;
+    }
+
+    @Override
+    public void deleteObject(DeleteObjectRequest deleteObjectRequest) {
+        objects.remove(deleteObjectRequest.getKey());
+        checksums.remove(deleteObjectRequest.getKey());
+    }
+
+    @Override
+    public DeleteObjectsResult deleteObjects(DeleteObjectsRequest deleteObjectsRequest) {
+        deleteBatchSizes.add(deleteObjectsRequest.getKeys().size());
+        List<DeleteObjectsResult.DeletedObject> deletedObjects = new ArrayList<>();
+        List<MultiObjectDeleteException.DeleteError> errors = new ArrayList<>();
+        for (DeleteObjectsRequest.KeyVersion keyVersion : deleteObjectsRequest.getKeys()) {
+            String key = keyVersion.getKey();
+            if (undeletableKeys.contains(key)) {
+                MultiObjectDeleteException.DeleteError error = new MultiObjectDeleteException.DeleteError();
+                error.setKey(reportedKey(key));
+                error.setCode("AccessDenied");
+                error.setMessage("Access Denied");
+                errors.add(error);
+                continue;
+            }
+            // removing a missing key succeeds like in COS
+            objects.remove(key);
+            checksums.remove(key);
+            DeleteObjectsResult.DeletedObject deletedObject = new DeleteObjectsResult.DeletedObject();
+            deletedObject.setKey(reportedKey(key));
+            deletedObjects.add(deletedObject);
+        }
+        if (!errors.isEmpty()) {
+            throw new MultiObjectDeleteException(errors, deletedObjects);
+        }
+        return new DeleteObjectsResult(deletedObjects);
+    }
+
+    private String reportedKey(String key) {
+        if (!encodeDeletedKeys) {
+            return key;
+        }
+        try {
+            return URLEncoder.encode(key, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Map<Integer, byte[]> getParts(String uploadId) {
+        Map<Integer, byte[]> parts = uploadParts.get(uploadId);
+        if (parts == null) {
+            throw serviceException(404, "NoSuchUpload");
+        }
+        return parts;
+    }
+
+    private static CosServiceException serviceException(int statusCode, String errorCode) {
+        CosServiceException exception = new CosServiceException(errorCode);
+        exception.setStatusCode(statusCode);
+        exception.setErrorCode(errorCode);
+        return exception;
+    }
+
+    private static String etag(byte[] data) {
+        return Integer.toHexString(Arrays.hashCode(data)) + "-" + data.length;
+    }
+
+    private String getChecksum(String key, byte[] data) {
+        String checksum = checksums.get(key);
+        return checksum != null ? checksum : crc64(data);
+    }
+
+    private static String crc64(byte[] data) {
+        Crc64 checksum = new Crc64();
+        checksum.update(data, 0, data.length);
+        return Long.toUnsignedString(checksum.getValue());
+    }
+
+    private static byte[] readFile(File file, long offset, long length) {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            byte[] data = new byte[(int) length];
+            randomAccessFile.seek(offset);
+            randomAccessFile.readFully(data);
+            return data;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] readAll(InputStream inputStream) {
+        try {
+            return IOUtils.toByteArray(inputStream);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}